@@ -12,7 +12,8 @@ import java.util.Calendar;
 
 import org.jenkinsci.plugins.valgrind.config.ValgrindPublisherConfig;
 import org.jenkinsci.plugins.valgrind.graph.ValgrindGraph;
-import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
+import org.jenkinsci.plugins.valgrind.model.ValgrindCounters;
+import org.jenkinsci.plugins.valgrind.model.ValgrindErrorKind;
 import org.jenkinsci.plugins.valgrind.util.AbstractValgrindBuildAction;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
@@ -29,13 +30,15 @@ public class ValgrindBuildAction extends AbstractValgrindBuildAction implements
 
 	private ValgrindResult result;
 	private ValgrindPublisherConfig config;
+	private ValgrindCounters counters;
 
 	public ValgrindBuildAction(Run<?, ?> owner, ValgrindResult result,
-			ValgrindPublisherConfig config)
+			ValgrindPublisherConfig config, ValgrindCounters counters)
 	{
 		super(owner);
 		this.result = result;
 		this.config = config;
+		this.counters = counters;
 	}
 
 	public Run<?, ?> getBuild()
@@ -53,6 +56,31 @@ public class ValgrindBuildAction extends AbstractValgrindBuildAction implements
 		return config;
 	}
 
+	/**
+	 * Returns the counters stored with this build. Builds recorded before the
+	 * counters were introduced compute them once from the report.
+	 *
+	 * @return the counters of this build
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public ValgrindCounters getCounters() throws IOException, InterruptedException
+	{
+		if ( counters == null )
+			counters = ValgrindCounters.createInstance(result.getReport());
+
+		return counters;
+	}
+
+	/**
+	 * Replaces the counters, e.g. when the results of another shard are
+	 * merged into this build.
+	 */
+	public void setCounters(ValgrindCounters counters)
+	{
+		this.counters = counters;
+	}
+
 	@Override
 	public String getSearchUrl()
 	{
@@ -122,23 +150,23 @@ public class ValgrindBuildAction extends AbstractValgrindBuildAction implements
 		{
 			final Run<?,?> run = buildAction.owner;
 			final ChartUtil.NumberOnlyBuildLabel label = new ChartUtil.NumberOnlyBuildLabel(run);
-			final ValgrindReport report = buildAction.getResult().getReport();
+			final ValgrindCounters counters = buildAction.getCounters();
 
 			// Memcheck:
-			dsb.add(report.getErrorList().getInvalidReadErrorCount() + report.getErrorList().getInvalidWriteErrorCount(), "Invalid reads/writes", label);
-			dsb.add(report.getErrorList().getLeakDefinitelyLostErrorCount(), "Leaks (definitely lost)", label);
-			dsb.add(report.getErrorList().getLeakPossiblyLostErrorCount(), "Leaks (possibly lost)", label);
-			dsb.add(report.getErrorList().getUninitializedConditionErrorCount() + report.getErrorList().getUninitializedValueErrorCount(), "Uninitialized value/cond.", label);
-			dsb.add(report.getErrorList().getInvalidFreeErrorCount() + report.getErrorList().getMismatchedFreeErrorCount(), "Illegal/mismatched frees", label);
-			dsb.add(report.getErrorList().getOverlapErrorCount(), "Overlaps", label);
-			dsb.add(report.getErrorList().getSyscallParamErrorCount(), "Illegal system calls", label);
+			dsb.add(counters.getErrorCount(ValgrindErrorKind.InvalidRead) + counters.getErrorCount(ValgrindErrorKind.InvalidWrite), "Invalid reads/writes", label);
+			dsb.add(counters.getErrorCount(ValgrindErrorKind.Leak_DefinitelyLost), "Leaks (definitely lost)", label);
+			dsb.add(counters.getErrorCount(ValgrindErrorKind.Leak_PossiblyLost), "Leaks (possibly lost)", label);
+			dsb.add(counters.getErrorCount(ValgrindErrorKind.UninitCondition) + counters.getErrorCount(ValgrindErrorKind.UninitValue), "Uninitialized value/cond.", label);
+			dsb.add(counters.getErrorCount(ValgrindErrorKind.InvalidFree) + counters.getErrorCount(ValgrindErrorKind.MismatchedFree), "Illegal/mismatched frees", label);
+			dsb.add(counters.getErrorCount(ValgrindErrorKind.Overlap), "Overlaps", label);
+			dsb.add(counters.getErrorCount(ValgrindErrorKind.SyscallParam), "Illegal system calls", label);
 
 			// Helgrind:
-			dsb.add(report.getErrorList().getRaceErrorCount(), "Data races", label);
-			dsb.add(report.getErrorList().getUnlockUnlockedErrorCount() + report.getErrorList().getUnlockForeignErrorCount() + report.getErrorList().getUnlockBogusErrorCount(), "Unlock issues", label);
-			dsb.add(report.getErrorList().getLockOrderErrorCount(), "Lock order", label);
-			dsb.add(report.getErrorList().getPthAPIErrorCount(), "Pthread API", label);
-			dsb.add(report.getErrorList().getMiscErrorCount(), "Helgrind misc", label);
+			dsb.add(counters.getErrorCount(ValgrindErrorKind.Race), "Data races", label);
+			dsb.add(counters.getErrorCount(ValgrindErrorKind.UnlockUnlocked) + counters.getErrorCount(ValgrindErrorKind.UnlockForeign) + counters.getErrorCount(ValgrindErrorKind.UnlockBogus), "Unlock issues", label);
+			dsb.add(counters.getErrorCount(ValgrindErrorKind.LockOrder), "Lock order", label);
+			dsb.add(counters.getErrorCount(ValgrindErrorKind.PthAPIerror), "Pthread API", label);
+			dsb.add(counters.getErrorCount(ValgrindErrorKind.Misc), "Helgrind misc", label);
 		}
 		return dsb;
 	}
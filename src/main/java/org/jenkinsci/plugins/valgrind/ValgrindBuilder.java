@@ -1,24 +1,53 @@
 package org.jenkinsci.plugins.valgrind;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintStream;
 import java.io.Serializable;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.servlet.ServletException;
 
+import antlr.ANTLRException;
+
 import org.apache.tools.ant.types.Commandline;
 import org.jenkinsci.plugins.valgrind.call.ValgrindBooleanOption;
 import org.jenkinsci.plugins.valgrind.call.ValgrindCall;
+import org.jenkinsci.plugins.valgrind.call.ValgrindCallMonitor;
 import org.jenkinsci.plugins.valgrind.call.ValgrindExecutable;
+import org.jenkinsci.plugins.valgrind.call.ValgrindFingerprint;
+import org.jenkinsci.plugins.valgrind.call.ValgrindProcessThrottle;
 import org.jenkinsci.plugins.valgrind.call.ValgrindStringOption;
 import org.jenkinsci.plugins.valgrind.call.ValgrindTrackOriginsOption;
 import org.jenkinsci.plugins.valgrind.call.ValgrindVersion;
+import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
+import org.jenkinsci.plugins.valgrind.parser.ValgrindLiveScanner;
+import org.jenkinsci.plugins.valgrind.parser.ValgrindParserOptions;
+import org.jenkinsci.plugins.valgrind.parser.ValgrindPipeParser;
+import org.jenkinsci.plugins.valgrind.parser.ValgrindReportSnapshot;
+import org.jenkinsci.plugins.valgrind.util.ValgrindEvaluator;
+import org.jenkinsci.plugins.valgrind.util.ValgrindLogOutputStream;
 import org.jenkinsci.plugins.valgrind.util.ValgrindLogger;
+import org.jenkinsci.plugins.valgrind.util.ValgrindPrefixOutputStream;
+import org.jenkinsci.plugins.valgrind.util.ValgrindSharding;
 import org.jenkinsci.plugins.valgrind.util.ValgrindUtil;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
@@ -29,14 +58,22 @@ import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.Util;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.AbstractProject;
+import hudson.model.Computer;
 import hudson.model.Descriptor;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Result;
 import hudson.model.Run;
 import hudson.model.TaskListener;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
+import hudson.util.DaemonThreadFactory;
 import hudson.util.FormValidation;
+import hudson.util.NamingThreadFactory;
+import hudson.util.StreamTaskListener;
 import jenkins.model.Jenkins;
 import jenkins.tasks.SimpleBuildStep;
 import net.sf.json.JSONObject;
@@ -57,6 +94,23 @@ public class ValgrindBuilder extends Builder implements SimpleBuildStep
 	public static final ValgrindVersion VERSION_3_7_0 = ValgrindVersion.createInstance(3, 7, 0);
 	public static final ValgrindVersion VERSION_3_8_0 = ValgrindVersion.createInstance(3, 8, 0);
 
+	private static final long FAIL_FAST_INTERVAL_SECONDS = 10;
+
+	/**
+	 * Reports of executables that may be reused by later builds, stored in
+	 * the build directory under the fingerprint of the valgrind run.
+	 */
+	private static final String REUSABLE_REPORTS_DIRECTORY = "valgrind-plugin/valgrind-reusable";
+	private static final int REUSE_PREVIOUS_BUILDS = 10;
+
+	/**
+	 * Directory next to the reusable xml files the snapshots of streamed
+	 * reports are stored in.
+	 */
+	private static final String REUSABLE_STREAMED_DIRECTORY = "streamed";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
 	public String valgrindExecutable;
 	public String workingDirectory;
 	public String includePattern;
@@ -72,6 +126,16 @@ public class ValgrindBuilder extends Builder implements SimpleBuildStep
 	public boolean generateSuppressions;
 	public String  suppressionFiles;
 	public boolean removeOldReports;
+	public String liveUpdateInterval;
+	public boolean streamXml;
+	public boolean failFast;
+	public String concurrency;
+	public String outputLimit;
+	public String shardIndex;
+	public String shardCount;
+	public boolean reuseReports;
+	public String timeLimit;
+	public String cpuTimeLimit;
 
 	// Fields in config.jelly must match the parameter names in the
 	// "DataBoundConstructor"
@@ -90,7 +154,17 @@ public class ValgrindBuilder extends Builder implements SimpleBuildStep
 			boolean childSilentAfterFork,
 			boolean generateSuppressions,
 			String  suppressionFiles,
-			boolean removeOldReports)
+			boolean removeOldReports,
+			String liveUpdateInterval,
+			boolean streamXml,
+			boolean failFast,
+			String concurrency,
+			String outputLimit,
+			String shardIndex,
+			String shardCount,
+			boolean reuseReports,
+			String timeLimit,
+			String cpuTimeLimit)
 	{
 		this.valgrindExecutable = valgrindExecutable.trim();
 		this.workingDirectory = workingDirectory.trim();
@@ -107,6 +181,16 @@ public class ValgrindBuilder extends Builder implements SimpleBuildStep
 		this.generateSuppressions = generateSuppressions;
 		this.suppressionFiles = suppressionFiles;
 		this.removeOldReports = removeOldReports;
+		this.liveUpdateInterval = liveUpdateInterval;
+		this.streamXml = streamXml;
+		this.failFast = failFast;
+		this.concurrency = concurrency;
+		this.outputLimit = outputLimit;
+		this.shardIndex = shardIndex;
+		this.shardCount = shardCount;
+		this.reuseReports = reuseReports;
+		this.timeLimit = timeLimit;
+		this.cpuTimeLimit = cpuTimeLimit;
 	}
 /*
 	public ValgrindBuilderConfig getValgrindBuilderConfig()
@@ -121,31 +205,140 @@ public class ValgrindBuilder extends Builder implements SimpleBuildStep
 	}
 */
 	@Override
-	public void perform(Run<?, ?> run, FilePath workspace, Launcher launcher, TaskListener listener)
+	public void perform(final Run<?, ?> run, final FilePath workspace, final Launcher launcher, final TaskListener listener)
 			throws InterruptedException, IOException
 	{
 		try
 		{
-			EnvVars env = run.getEnvironment(listener);
+			final EnvVars env = run.getEnvironment(listener);
 
 			if(this.removeOldReports)
 			{
 				deleteOldReports(workspace, listener);
 			}
 
-			ValgrindExecutable valgrindExecutable = new ValgrindExecutable(launcher, env.expand(this.valgrindExecutable));
+			final ValgrindExecutable valgrindExecutable = new ValgrindExecutable(launcher, env.expand(this.valgrindExecutable), env);
 
 			ValgrindLogger.log( listener, "detected valgrind version ("
 					+ valgrindExecutable.getExecutable() + "): "
 					+ valgrindExecutable.getVersion()  );
 
-			for (FilePath executable : getListOfExecutables(workspace, env, listener))
+			final ValgrindEvaluator.FailThresholds failFastThresholds = this.failFast ? getFailFastThresholds(run, env, listener) : null;
+			final ValgrindParserOptions pipeParserOptions = this.streamXml ? getPipeParserOptions(run, env, listener) : null;
+
+			long interval = getLiveUpdateIntervalMillis(env, listener);
+			if (interval <= 0 && failFastThresholds != null)
+				interval = FAIL_FAST_INTERVAL_SECONDS * 1000;
+
+			final long liveInterval = interval;
+
+			final List<FilePath> executables = getListOfExecutables(workspace, env, listener);
+			final Map<FilePath, String> reportNames = getReportNames(workspace, executables);
+			final ValgrindDurationAction previousDurations = ValgrindDurationAction.findPrevious(run);
+			final ValgrindDurationAction durationAction = ValgrindDurationAction.forBuild(run);
+
+			if (!selectShard(executables, reportNames, durationAction, previousDurations, env, listener))
 			{
-				if (!callValgrindOnExecutable(workspace, env, listener, launcher, valgrindExecutable, executable))
+				run.setResult(Result.FAILURE);
+				return;
+			}
+
+			final int concurrency = Math.min(getConcurrency(env, listener), executables.size());
+
+			if (concurrency > 1 && previousDurations != null)
+			{
+				// keeps processors busy until the end instead of waiting for a long executable started last
+				final Comparator<String> longestFirst = previousDurations.longestFirst();
+				Collections.sort(executables, new Comparator<FilePath>()
+				{
+					public int compare(FilePath a, FilePath b)
+					{
+						return longestFirst.compare(reportNames.get(a), reportNames.get(b));
+					}
+				});
+			}
+
+			final Map<String, Long> durations = new ConcurrentHashMap<String, Long>();
+			final Set<String> reusedReports = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+			// set once an executable failed or a fail threshold is exceeded, executables not started yet are skipped
+			final AtomicBoolean stop = new AtomicBoolean(false);
+
+			// finished in the finally block below
+			final ValgrindLiveAction liveAction = liveInterval > 0 ? ValgrindLiveAction.startStep(run) : null;
+
+			List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+			for (final FilePath executable : executables)
+			{
+				tasks.add(new Callable<Boolean>()
+				{
+					public Boolean call() throws Exception
+					{
+						if (stop.get())
+							return true;
+
+						String reportName = reportNames.get(executable);
+						TaskListener executableListener = listener;
+						if (concurrency > 1)
+							executableListener = new StreamTaskListener(new ValgrindPrefixOutputStream(listener.getLogger(), "[" + reportName + "] ", UTF_8), UTF_8);
+
+						try
+						{
+							long start = System.currentTimeMillis();
+							boolean success = callValgrindOnExecutable(run, workspace, env, executableListener, launcher, valgrindExecutable, executable, reportName,
+									liveAction, liveInterval, failFastThresholds, pipeParserOptions, reusedReports);
+							long duration = System.currentTimeMillis() - start;
+
+							ValgrindLogger.log(executableListener, "valgrind took " + Util.getTimeSpanString(duration));
+
+							boolean thresholdExceeded = failFastThresholds != null && failFastThresholds.isExceeded(liveAction.getCounters());
+
+							// valgrind may have been killed early or not run at all and did not take its usual time
+							if (!thresholdExceeded && !reusedReports.contains(reportName))
+								durations.put(reportName, duration);
+
+							if (!success || thresholdExceeded)
+								stop.set(true);
+
+							return success;
+						}
+						finally
+						{
+							if (executableListener != listener)
+								executableListener.getLogger().close();
+						}
+					}
+				});
+			}
+
+			try
+			{
+				if (concurrency > 1)
+					ValgrindLogger.log(listener, "running valgrind on up to " + concurrency + " executables at the same time");
+
+				boolean success = callAll(tasks, concurrency);
+
+				// the reports of a killed valgrind are incomplete, don't rely on the publisher to fail the build
+				if (failFastThresholds != null && failFastThresholds.isExceeded(liveAction.getCounters()))
+				{
+					ValgrindLogger.log(listener, "fail threshold exceeded, remaining executables were skipped");
+					run.setResult(Result.FAILURE);
+					return;
+				}
+
+				if (!success)
 				{
 					return;
 				}
 			}
+			finally
+			{
+				if (liveAction != null)
+					liveAction.finish();
+
+				// shards running in parallel branches of a pipeline share the action
+				durationAction.record(durations, reportNames.values(), previousDurations);
+			}
 		}
                 catch (RuntimeException e)
                 {
@@ -180,6 +373,513 @@ public class ValgrindBuilder extends Builder implements SimpleBuildStep
 		return files;
 	}
 
+	/**
+	 * @return whether the remaining executables still run after valgrind
+	 *         exited with the given code
+	 */
+	static boolean isContinued(ValgrindCall call, int exitCode, boolean ignoreExitCode)
+	{
+		// the partial reports of a terminated valgrind are published, the build fails anyway
+		return exitCode == 0 || ignoreExitCode || call.isTimeLimitExceeded();
+	}
+
+	/**
+	 * Runs the given tasks, in order if concurrency is 1, and waits for all of
+	 * them, even if one fails.
+	 *
+	 * @return false if one of the tasks returned false
+	 */
+	static boolean callAll(List<Callable<Boolean>> tasks, int concurrency) throws Exception
+	{
+		boolean success = true;
+
+		if (concurrency <= 1)
+		{
+			for (Callable<Boolean> task : tasks)
+				success &= task.call();
+
+			return success;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency,
+				new NamingThreadFactory(new DaemonThreadFactory(), ValgrindBuilder.class.getSimpleName()));
+		try
+		{
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (Callable<Boolean> task : tasks)
+				results.add(executor.submit(task));
+
+			Throwable failure = null;
+			for (Future<Boolean> result : results)
+			{
+				try
+				{
+					success &= result.get();
+				}
+				catch (ExecutionException e)
+				{
+					if (failure == null)
+						failure = e.getCause();
+				}
+			}
+
+			if (failure instanceof Exception)
+				throw (Exception) failure;
+			if (failure instanceof Error)
+				throw (Error) failure;
+
+			return success;
+		}
+		finally
+		{
+			// interrupts running calls if the build was aborted, which kills their valgrind
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Removes the executables that belong to other shards. The names of the
+	 * executables are computed from all of them and are the same on every
+	 * shard, as long as all shards see the same executables. All shards of the
+	 * build split by the same durations, see
+	 * {@link ValgrindDurationAction#getShardDurations}.
+	 *
+	 * @return false if the shard configuration is invalid
+	 */
+	private boolean selectShard(List<FilePath> executables, Map<FilePath, String> reportNames, ValgrindDurationAction durationAction,
+			ValgrindDurationAction previousDurations, EnvVars env, TaskListener listener)
+	{
+		String index = ValgrindUtil.trimToNull(env.expand(this.shardIndex));
+		String count = ValgrindUtil.trimToNull(env.expand(this.shardCount));
+		if (index == null && count == null)
+			return true;
+
+		int shardIndex;
+		int shardCount;
+		try
+		{
+			shardIndex = Integer.parseInt(index);
+			shardCount = Integer.parseInt(count);
+		}
+		catch (NumberFormatException e)
+		{
+			ValgrindLogger.log(listener, "ERROR: shard index '" + index + "' and shard count '" + count + "' must both be numbers");
+			return false;
+		}
+
+		if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount)
+		{
+			ValgrindLogger.log(listener, "ERROR: shard index " + shardIndex + " must be at least 0 and less than the shard count " + shardCount);
+			return false;
+		}
+
+		List<String> names = new ArrayList<String>(reportNames.values());
+		Collections.sort(names);
+
+		Map<String, Long> durations = durationAction.getShardDurations(previousDurations);
+		List<String> selected = ValgrindSharding.select(names, durations, shardIndex, shardCount);
+
+		int total = executables.size();
+		for (Iterator<FilePath> it = executables.iterator(); it.hasNext(); )
+		{
+			if (!selected.contains(reportNames.get(it.next())))
+				it.remove();
+		}
+
+		ValgrindLogger.log(listener, "shard " + shardIndex + " of " + shardCount + " runs " + executables.size() + " of " + total + " executables");
+		return true;
+	}
+
+	/**
+	 * Executables are run one after another unless a concurrency is
+	 * configured.
+	 */
+	private int getConcurrency(EnvVars env, TaskListener listener)
+	{
+		String concurrency = ValgrindUtil.trimToNull(env.expand(this.concurrency));
+		if (concurrency == null)
+			return 1;
+
+		try
+		{
+			return Math.max(1, Integer.parseInt(concurrency));
+		}
+		catch (NumberFormatException e)
+		{
+			ValgrindLogger.log(listener, "ERROR: '" + concurrency + "' is not a valid number of concurrent valgrind calls, running them one after another");
+		}
+
+		return 1;
+	}
+
+	/**
+	 * Reports are named after the executable. Executables with the same name in
+	 * different directories are told apart by their path relative to the
+	 * workspace, so that names don't depend on the order in which they run.
+	 */
+	private static Map<FilePath, String> getReportNames(FilePath workspace, List<FilePath> executables)
+	{
+		Map<String, Integer> nameCounts = new HashMap<String, Integer>();
+		for (FilePath executable : executables)
+		{
+			Integer count = nameCounts.get(executable.getName());
+			nameCounts.put(executable.getName(), count == null ? 1 : count + 1);
+		}
+
+		String base = fullPath(workspace) + "/";
+
+		Map<FilePath, String> names = new HashMap<FilePath, String>();
+		for (FilePath executable : executables)
+		{
+			String name = executable.getName();
+
+			if (nameCounts.get(name) > 1)
+			{
+				String path = fullPath(executable);
+				if (path.startsWith(base))
+					path = path.substring(base.length());
+
+				name = path.replace('/', '_');
+			}
+
+			names.put(executable, name);
+		}
+
+		return names;
+	}
+
+	private long getOutputLimitBytes(EnvVars env, TaskListener listener)
+	{
+		String limit = ValgrindUtil.trimToNull(env.expand(this.outputLimit));
+		if (limit == null)
+			return 0;
+
+		try
+		{
+			return Math.max(0, Long.parseLong(limit)) * 1024;
+		}
+		catch (NumberFormatException e)
+		{
+			ValgrindLogger.log(listener, "ERROR: '" + limit + "' is not a valid output limit, all output will be logged");
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Waits until the process limits of the labels the node matches allow
+	 * another valgrind process.
+	 *
+	 * @return null if the node is not limited
+	 */
+	private ValgrindProcessThrottle.Permit acquireProcessPermit(Run<?, ?> run, FilePath workspace, TaskListener listener) throws InterruptedException
+	{
+		Map<String, Integer> limits = ValgrindProcessThrottle.parseLimits(getDescriptor().getProcessLimits());
+		if (limits.isEmpty())
+			return null;
+
+		Computer computer = workspace.toComputer();
+		Node node = computer != null ? computer.getNode() : null;
+		if (node == null)
+			return null;
+
+		Map<String, Integer> nodeLimits = new LinkedHashMap<String, Integer>();
+		for (Map.Entry<String, Integer> limit : limits.entrySet())
+		{
+			try
+			{
+				if (Label.parseExpression(limit.getKey()).matches(node))
+					nodeLimits.put(limit.getKey(), limit.getValue());
+			}
+			catch (ANTLRException e)
+			{
+				ValgrindLogger.log(listener, "WARNING: invalid label expression '" + limit.getKey() + "' in valgrind process limits: " + e.getMessage());
+			}
+		}
+
+		if (nodeLimits.isEmpty())
+			return null;
+
+		final String nodeName = node.getNodeName();
+		if (!ValgrindProcessThrottle.isAvailable(nodeName, nodeLimits))
+			ValgrindLogger.log(listener, "waiting for other valgrind processes on this node to finish, limits: " + nodeLimits);
+
+		long start = System.currentTimeMillis();
+		ValgrindProcessThrottle.Permit permit = ValgrindProcessThrottle.acquire(nodeName, nodeLimits, run);
+		if (permit.hasWaited())
+			ValgrindLogger.log(listener, "waited " + Util.getTimeSpanString(System.currentTimeMillis() - start) + " for the valgrind process limits of this node");
+
+		return permit;
+	}
+
+	private long getTimeLimitMillis(EnvVars env, TaskListener listener)
+	{
+		String limit = ValgrindUtil.trimToNull(env.expand(this.timeLimit));
+		if (limit == null)
+			return 0;
+
+		try
+		{
+			return Math.max(0, Long.parseLong(limit)) * 1000;
+		}
+		catch (NumberFormatException e)
+		{
+			ValgrindLogger.log(listener, "ERROR: '" + limit + "' is not a valid time limit, valgrind may run indefinitely");
+		}
+
+		return 0;
+	}
+
+	private long getCpuTimeLimitSeconds(EnvVars env, TaskListener listener)
+	{
+		String limit = ValgrindUtil.trimToNull(env.expand(this.cpuTimeLimit));
+		if (limit == null)
+			return 0;
+
+		try
+		{
+			return Math.max(0, Long.parseLong(limit));
+		}
+		catch (NumberFormatException e)
+		{
+			ValgrindLogger.log(listener, "ERROR: '" + limit + "' is not a valid CPU time limit, CPU time is not limited");
+		}
+
+		return 0;
+	}
+
+	private long getLiveUpdateIntervalMillis(EnvVars env, TaskListener listener)
+	{
+		String interval = ValgrindUtil.trimToNull(env.expand(this.liveUpdateInterval));
+		if (interval == null)
+			return 0;
+
+		try
+		{
+			return Math.max(0, Long.parseLong(interval)) * 1000;
+		}
+		catch (NumberFormatException e)
+		{
+			ValgrindLogger.log(listener, "ERROR: '" + interval + "' is not a valid live update interval, live updates are disabled");
+		}
+
+		return 0;
+	}
+
+	/**
+	 * @return the valgrind publisher of the project, null if there is none or
+	 *         the project is a pipeline
+	 */
+	private static ValgrindPublisher getPublisher(Run<?, ?> run)
+	{
+		ValgrindPublisher publisher = null;
+		if (run.getParent() instanceof AbstractProject)
+			publisher = ((AbstractProject<?, ?>) run.getParent()).getPublishersList().get(ValgrindPublisher.class);
+
+		if (publisher == null || publisher.getValgrindPublisherConfig() == null)
+			return null;
+
+		return publisher;
+	}
+
+	/**
+	 * Streamed reports are parsed while valgrind runs, with the settings of
+	 * the publisher that would otherwise parse the xml files.
+	 */
+	private static ValgrindParserOptions getPipeParserOptions(Run<?, ?> run, EnvVars env, TaskListener listener)
+	{
+		ValgrindPublisher publisher = getPublisher(run);
+		if (publisher == null)
+		{
+			ValgrindLogger.log(listener, "WARNING: no valgrind publisher in the same project, streamed xml output is parsed with the default settings");
+			return ValgrindParserOptions.DEFAULT;
+		}
+
+		return publisher.getParserOptions(env, listener);
+	}
+
+	private static ValgrindEvaluator.FailThresholds getFailFastThresholds(Run<?, ?> run, EnvVars env, TaskListener listener)
+	{
+		ValgrindPublisher publisher = getPublisher(run);
+
+		if (publisher == null)
+		{
+			ValgrindLogger.log(listener, "WARNING: fail fast requires a valgrind publisher in the same project, valgrind will not be stopped early");
+			return null;
+		}
+
+		return new ValgrindEvaluator(publisher.getValgrindPublisherConfig(), listener).getFailThresholds(env);
+	}
+
+	/**
+	 * Creates a named pipe in a new temporary directory below the output
+	 * directory.
+	 *
+	 * @return the pipe or null if it could not be created
+	 */
+	private static FilePath createPipe(Launcher launcher, FilePath outDir, String name, TaskListener listener) throws IOException, InterruptedException
+	{
+		FilePath dir = outDir.createTempDir("valgrind", ".pipe");
+		FilePath pipe = dir.child(name);
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		int exitCode = launcher.launch().cmds("mkfifo", pipe.getRemote()).stdout(output).stderr(output).quiet(true).join();
+		if (exitCode == 0)
+			return pipe;
+
+		ValgrindLogger.log(listener, "WARNING: failed to create named pipe (" + output.toString("UTF-8").trim()
+				+ "), xml output will be written to file");
+		dir.deleteRecursive();
+		return null;
+	}
+
+	/**
+	 * Waits for the parser reading from the pipe and removes the pipe.
+	 *
+	 * @return the streamed report, null if valgrind did not stream a valid one
+	 */
+	private static ValgrindReport finishPipe(FilePath pipe, Future<ValgrindReport> parser, TaskListener listener) throws IOException, InterruptedException
+	{
+		try
+		{
+			// valgrind has finished or never opened the pipe, e.g. because the program was not found
+			pipe.act(new ValgrindPipeParser.Release());
+
+			// the parser is done once it has read the rest of the pipe
+			ValgrindReport report = parser.get();
+			if (report == null)
+				ValgrindLogger.log(listener, "WARNING: valgrind did not stream a valid report");
+
+			return report;
+		}
+		catch (InterruptedException e)
+		{
+			parser.cancel(true);
+			throw e;
+		}
+		catch (ExecutionException e)
+		{
+			ValgrindLogger.log(listener, "WARNING: failed to parse streamed xml output: " + e.getCause().getMessage());
+			return null;
+		}
+		finally
+		{
+			try
+			{
+				// also if interrupted before, a parser never waits for the pipe
+				pipe.act(new ValgrindPipeParser.Release());
+			}
+			finally
+			{
+				// a parser still reading gives up once the pipe is gone
+				pipe.getParent().deleteRecursive();
+			}
+		}
+	}
+
+	/**
+	 * @return the path of the directory relative to the workspace with a
+	 *         trailing slash, as the publisher's pattern sees it, empty if it
+	 *         is not inside the workspace
+	 */
+	private static String getRelativePath(FilePath workspace, FilePath dir)
+	{
+		String base = workspace.getRemote();
+		String path = dir.getRemote();
+
+		if (path.length() <= base.length() || !path.startsWith(base))
+			return "";
+
+		char separator = path.charAt(base.length());
+		if (separator != '/' && separator != '\\')
+			return "";
+
+		return path.substring(base.length() + 1).replace('\\', '/') + "/";
+	}
+
+	/**
+	 * Stores a streamed report with the build, for the publisher. Below
+	 * {@link ValgrindResult#STREAMED_DIRECTORY} it has the path the xml file
+	 * would have had below the workspace.
+	 *
+	 * @return the stored snapshot of the report
+	 */
+	private static File storeStreamedReport(Run<?, ?> run, FilePath workspace, FilePath outDir, String name, ValgrindReport report,
+			TaskListener listener) throws IOException
+	{
+		File file = new File(run.getRootDir(), ValgrindResult.STREAMED_DIRECTORY + "/" + getRelativePath(workspace, outDir) + name);
+		ValgrindReportSnapshot.write(file, report);
+
+		ValgrindLogger.log(listener, "parsed streamed xml output into " + name);
+		return file;
+	}
+
+	/**
+	 * Counts the errors in the xml files of the running executable and
+	 * updates the live action. Executables running at the same time have
+	 * their own monitor.
+	 */
+	private static class LiveMonitor implements ValgrindCallMonitor
+	{
+		private final FilePath outDir;
+		private final String name;
+		private final String pattern;
+		private final ValgrindLiveAction action;
+		private final ValgrindEvaluator.FailThresholds failFastThresholds;
+		private final TaskListener listener;
+		private ValgrindLiveScanner.State state;
+		private int errorCount = 0;
+
+		/**
+		 * @param failFastThresholds
+		 *            kills valgrind once the errors of all executables run so
+		 *            far exceed a fail threshold, may be null
+		 */
+		LiveMonitor(FilePath outDir, String name, String pattern, ValgrindLiveAction action, ValgrindEvaluator.FailThresholds failFastThresholds, TaskListener listener)
+		{
+			this.outDir = outDir;
+			this.name = name;
+			this.pattern = pattern;
+			this.action = action;
+			this.failFastThresholds = failFastThresholds;
+			this.listener = listener;
+		}
+
+		void start() throws IOException, InterruptedException
+		{
+			state = outDir.act(new ValgrindLiveScanner(pattern, ValgrindPublisher.DESCRIPTOR.getParserEngine(), null));
+		}
+
+		public boolean poll() throws IOException, InterruptedException
+		{
+			try
+			{
+				state = outDir.act(new ValgrindLiveScanner(pattern, ValgrindPublisher.DESCRIPTOR.getParserEngine(), state));
+			}
+			catch (IOException e)
+			{
+				ValgrindLogger.log(listener, "WARN: failed to read valgrind reports while running: " + e.getMessage());
+				return true;
+			}
+
+			action.update(name, state.getCounters());
+
+			if (state.getCounters().getErrorCount() != errorCount)
+			{
+				errorCount = state.getCounters().getErrorCount();
+				ValgrindLogger.log(listener, errorCount + " errors so far");
+			}
+
+			if (failFastThresholds != null && failFastThresholds.isExceeded(action.getCounters()))
+			{
+				ValgrindLogger.log(listener, "fail threshold exceeded, stopping valgrind early");
+				return false;
+			}
+
+			return true;
+		}
+	}
+
 	@Override
 	public DescriptorImpl getDescriptor()
 	{
@@ -194,6 +894,166 @@ public class ValgrindBuilder extends Builder implements SimpleBuildStep
 		return fullPath(fp.getParent()) + "/" + fp.getName();
 	}
 
+	/**
+	 * @return fingerprint of everything the valgrind run of the executable
+	 *         depends on, null if it can't be determined
+	 */
+	private static String getFingerprint(ValgrindCall call, FilePath workspace, FilePath executable, String xmlFilename, List<String> suppressionFiles,
+			ValgrindExecutable valgrind, EnvVars env, TaskListener listener) throws IOException, InterruptedException
+	{
+		String valgrindKey = valgrind.getKey();
+		if (valgrindKey == null)
+		{
+			ValgrindLogger.log(listener, "WARNING: valgrind executable not located, give its absolute path or a name on the PATH to reuse reports");
+			return null;
+		}
+
+		List<String> arguments = new ArrayList<String>();
+		arguments.add(valgrindKey);
+		arguments.add(valgrind.getVersion().toString());
+
+		for (String argument : call.getCommandLine(TaskListener.NULL))
+		{
+			// a named pipe has a new name in each build
+			if (argument.startsWith("--xml-file="))
+				argument = "--xml-file=" + xmlFilename;
+
+			// unchanged executables may be built in another workspace
+			arguments.add(argument.replace(workspace.getRemote(), "${WORKSPACE}"));
+		}
+
+		String fingerprint = executable.act(new ValgrindFingerprint(arguments, suppressionFiles, env));
+		if (fingerprint == null)
+			ValgrindLogger.log(listener, "WARNING: shared libraries can't be determined (ldd not available), reports can't be reused");
+
+		return fingerprint;
+	}
+
+	/**
+	 * Copies the reports stored with a previous build for the fingerprint to
+	 * the output directory, as if valgrind had written them. Streamed reports
+	 * are copied within the controller, as if the builder had stored them.
+	 *
+	 * @return false if no previous build has reports for the fingerprint
+	 */
+	private static boolean reuseReports(Run<?, ?> run, String fingerprint, FilePath workspace, FilePath outDir, String reportName,
+			TaskListener listener) throws IOException, InterruptedException
+	{
+		Run<?, ?> previous = run.getPreviousBuild();
+		for (int i = 0; previous != null && i < REUSE_PREVIOUS_BUILDS; ++i)
+		{
+			FilePath reports = new FilePath(new File(previous.getRootDir(), REUSABLE_REPORTS_DIRECTORY + "/" + fingerprint));
+			if (reports.isDirectory())
+			{
+				ValgrindLogger.log(listener, "executable, libraries and options unchanged since " + previous.getFullDisplayName() + ", reusing its reports");
+
+				for (FilePath report : reports.list())
+				{
+					if (!report.isDirectory())
+						report.copyTo(outDir.child(reportName + "." + report.getName()));
+				}
+
+				FilePath streamed = reports.child(REUSABLE_STREAMED_DIRECTORY);
+				if (streamed.isDirectory())
+				{
+					String streamedPath = ValgrindResult.STREAMED_DIRECTORY + "/" + getRelativePath(workspace, outDir) + reportName + ".";
+					for (FilePath report : streamed.list())
+						report.copyTo(new FilePath(new File(run.getRootDir(), streamedPath + report.getName())));
+				}
+
+				// keep them for the following builds, older builds may be discarded
+				synchronized (run)
+				{
+					FilePath target = new FilePath(new File(run.getRootDir(), REUSABLE_REPORTS_DIRECTORY + "/" + fingerprint));
+					if (!target.exists())
+						reports.copyRecursiveTo(target);
+				}
+
+				return true;
+			}
+
+			previous = previous.getPreviousBuild();
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return modification time per file name of the reports in the output
+	 *         directory matching the pattern
+	 */
+	private static Map<String, Long> listReports(FilePath outDir, String reportPattern) throws IOException, InterruptedException
+	{
+		Map<String, Long> reports = new HashMap<String, Long>();
+
+		for (FilePath report : outDir.list(reportPattern))
+			reports.put(report.getName(), report.lastModified());
+
+		return reports;
+	}
+
+	/**
+	 * Stores the reports valgrind wrote for the executable with the build,
+	 * under the fingerprint of the valgrind run and without the report name.
+	 *
+	 * @param streamedReport
+	 *            snapshot of the streamed report, null if valgrind wrote the
+	 *            xml to file
+	 */
+	private static void storeReusableReports(Run<?, ?> run, String fingerprint, FilePath outDir, String reportName, String reportEnding,
+			Map<String, Long> existingReports, File streamedReport, TaskListener listener) throws IOException, InterruptedException
+	{
+		FilePath dir = new FilePath(new File(run.getRootDir(), REUSABLE_REPORTS_DIRECTORY));
+		dir.mkdirs();
+
+		// written completely before other builds may see it
+		FilePath temp = dir.createTempDir(fingerprint, ".tmp");
+		try
+		{
+			int count = 0;
+			for (FilePath report : outDir.list(reportName + ".*" + reportEnding))
+			{
+				String name = report.getName();
+				String pid = name.substring(reportName.length() + 1, name.length() - reportEnding.length());
+
+				// e.g. a report of executable "test.sub" when looking for those of "test"
+				if (pid.isEmpty() || pid.contains("."))
+					continue;
+
+				Long modified = existingReports.get(name);
+				if (modified != null && modified.longValue() == report.lastModified())
+					continue;
+
+				report.copyTo(temp.child(pid + reportEnding));
+				count++;
+			}
+
+			if (streamedReport != null)
+			{
+				String name = streamedReport.getName();
+				new FilePath(streamedReport).copyTo(temp.child(REUSABLE_STREAMED_DIRECTORY).child(name.substring(reportName.length() + 1)));
+				count++;
+			}
+
+			if (count == 0)
+				return;
+
+			synchronized (run)
+			{
+				FilePath target = dir.child(fingerprint);
+				if (!target.exists())
+					temp.renameTo(target);
+			}
+
+			ValgrindLogger.log(listener, "stored " + count + " report(s) for reuse by later builds");
+		}
+		finally
+		{
+			if (temp.exists())
+				temp.deleteRecursive();
+		}
+	}
+
 	private void deleteOldReports(FilePath workspace, TaskListener listener) throws IOException, InterruptedException
 	{
 		if(this.outputFileEnding == null || this.outputFileEnding.isEmpty())
@@ -239,8 +1099,13 @@ public class ValgrindBuilder extends Builder implements SimpleBuildStep
 		return files;
 	}
 
-	private boolean callValgrindOnExecutable(FilePath workspace, EnvVars env, TaskListener listener, Launcher launcher, ValgrindExecutable valgrind, FilePath executable) throws IOException, InterruptedException
+	private boolean callValgrindOnExecutable(Run<?, ?> run, FilePath workspace, EnvVars env, TaskListener listener, Launcher launcher, ValgrindExecutable valgrind,
+			FilePath executable, String reportName, ValgrindLiveAction liveAction, long liveInterval, ValgrindEvaluator.FailThresholds failFastThresholds,
+			ValgrindParserOptions pipeParserOptions, Set<String> reusedReports) throws IOException, InterruptedException
 	{
+		// executables may run at the same time, each needs its own PROGRAM_NAME and PROGRAM_DIR
+		env = new EnvVars(env);
+
 		final String programName = executable.getName();
 		env.put("PROGRAM_NAME", programName);
 
@@ -255,7 +1120,7 @@ public class ValgrindBuilder extends Builder implements SimpleBuildStep
 		if (!outDir.exists() || !outDir.isDirectory())
 			outDir.mkdirs();
 
-		final FilePath xmlFile = outDir.child(executable.getName() + ".%p" + env.expand(this.outputFileEnding));
+		final FilePath xmlFile = outDir.child(reportName + ".%p" + env.expand(this.outputFileEnding));
 		final String xmlFilename = xmlFile.getRemote();
 
 		ValgrindCall call = new ValgrindCall();
@@ -287,11 +1152,24 @@ public class ValgrindBuilder extends Builder implements SimpleBuildStep
 		call.addValgrindOption(new ValgrindBooleanOption("trace-children", this.traceChildren, VERSION_3_5_0));
 		call.addValgrindOption(new ValgrindStringOption("gen-suppressions", this.generateSuppressions ? "all" : "no"));
 		call.addValgrindOption(new ValgrindStringOption("xml", "yes"));
-		call.addValgrindOption(new ValgrindStringOption("xml-file", xmlFilename, VERSION_3_5_0));
+		FilePath pipe = null;
+		if (this.streamXml)
+		{
+			if (!valgrind.getVersion().isGreaterOrEqual(VERSION_3_5_0))
+				ValgrindLogger.log(listener, "WARNING: streaming xml output requires valgrind 3.5.0 or later, xml output will be written to file");
+			else if (this.traceChildren)
+				ValgrindLogger.log(listener, "WARNING: streaming xml output is not possible when tracing children, xml output will be written to file");
+			else
+				pipe = createPipe(launcher, outDir, reportName, listener);
+		}
 
+		call.addValgrindOption(new ValgrindStringOption("xml-file", pipe != null ? pipe.getRemote() : xmlFilename, VERSION_3_5_0));
+
+		List<String> suppressionFiles = new ArrayList<String>();
 		for(String s : getSuppressionFileList())
 		{
 			call.addValgrindOption(new ValgrindStringOption("suppressions", env.expand(s)));
+			suppressionFiles.add(workDir.child(env.expand(s)).getRemote());
 		}
 
 		if (this.valgrindOptions != null)
@@ -299,51 +1177,124 @@ public class ValgrindBuilder extends Builder implements SimpleBuildStep
 			call.addCustomValgrindOptions(Commandline.translateCommandline(this.valgrindOptions));
 		}
 
-		ByteArrayOutputStream stdout = new ByteArrayOutputStream();
-		ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+		call.setTimeLimit(getTimeLimitMillis(env, listener));
+		call.setCpuTimeLimit(getCpuTimeLimitSeconds(env, listener));
+
+		final String reportEnding = env.expand(this.outputFileEnding);
+		final String reportPattern = reportName + ".*" + reportEnding;
+
+		String fingerprint = null;
+		if (this.reuseReports)
+		{
+			fingerprint = getFingerprint(call, workspace, executable, xmlFilename, suppressionFiles, valgrind, env, listener);
+
+			if (fingerprint != null && reuseReports(run, fingerprint, workspace, outDir, reportName, listener))
+			{
+				if (pipe != null)
+					pipe.getParent().deleteRecursive();
+
+				reusedReports.add(reportName);
+				return true;
+			}
+		}
+
+		// reports of previous builds are kept unless old reports are removed, only new ones are stored for reuse
+		Map<String, Long> existingReports = fingerprint != null ? listReports(outDir, reportPattern) : null;
+
+		LiveMonitor liveMonitor = null;
+		if (liveAction != null && pipe == null && valgrind.getVersion().isGreaterOrEqual(VERSION_3_5_0))
+		{
+			liveMonitor = new LiveMonitor(outDir, reportName, reportPattern, liveAction, failFastThresholds, listener);
+			liveMonitor.start();
+			liveAction.start(reportName);
+			call.setMonitor(liveMonitor, liveInterval);
+		}
+		else if (failFastThresholds != null)
+		{
+			ValgrindLogger.log(listener, "WARNING: fail fast requires valgrind 3.5.0 or later and is not available when streaming xml output");
+		}
+
+		Future<ValgrindReport> pipeParser = null;
+		if (pipe != null)
+			pipeParser = pipe.actAsync(new ValgrindPipeParser(ValgrindPublisher.DESCRIPTOR.getParserEngine(), pipeParserOptions));
+
+		// valgrind versions without --xml-file write the xml to error out
+		final boolean xmlFromStderr = !valgrind.getVersion().isGreaterOrEqual(VERSION_3_5_0);
+		if (xmlFromStderr)
+			ValgrindLogger.log(listener, "WARNING: valgrind version does not support writing xml output to file directly " +
+					"(requires version 3.5.0 or later), xml output will be captured from error out");
+
+		long outputLimit = getOutputLimitBytes(env, listener);
+		OutputStream stdout = new ValgrindLogOutputStream(listener, "valgrind standard out", outputLimit);
+		OutputStream stderr = xmlFromStderr ? xmlFile.write() : new ValgrindLogOutputStream(listener, "valgrind error out", outputLimit);
+		File streamedReport = null;
 		try
 		{
-			int exitCode = call.exec(listener, launcher, stdout, stderr);
+			int exitCode;
+			try
+			{
+				ValgrindProcessThrottle.Permit permit = acquireProcessPermit(run, workspace, listener);
+				try
+				{
+					exitCode = call.exec(listener, launcher, stdout, stderr);
+				}
+				finally
+				{
+					if (permit != null)
+						permit.release();
+				}
+			}
+			finally
+			{
+				if (pipe != null)
+				{
+					ValgrindReport report = finishPipe(pipe, pipeParser, listener);
+					if (report != null)
+						streamedReport = storeStreamedReport(run, workspace, outDir,
+								reportName + "." + report.getProcesses().get(0).getPid() + reportEnding, report, listener);
+				}
+			}
 			ValgrindLogger.log(listener, "valgrind exit code: " + exitCode);
 
-			if ( !valgrind.getVersion().isGreaterOrEqual(VERSION_3_5_0) )
+			if (liveMonitor != null)
 			{
-				ValgrindLogger.log(listener, "WARNING: valgrind version does not support writing xml output to file directly " +
-						"(requires version 3.5.0 or later), xml output will be captured from error out");
-                                OutputStream os = xmlFile.write();
-                                PrintStream out = new PrintStream(os, true, "UTF-8");
-                                try
-                                {
-                                        out.print(stderr.toString("UTF-8"));
-                                }
-                                finally
-                                {
-                                        out.close();
-                                        os.close();
-                                }
+				liveMonitor.poll();
+				liveAction.finishExecutable(reportName);
 			}
 
-			if (exitCode != 0 && !this.ignoreExitCode)
+			if (call.isTimeLimitExceeded())
+			{
+				ValgrindLogger.log(listener, "ERROR: valgrind was terminated, its reports may be incomplete");
+				run.setResult(Result.FAILURE);
+			}
+
+			if (!isContinued(call, exitCode, this.ignoreExitCode))
 				return false;
 		}
 		finally
 		{
-			String stdoutString = stdout.toString("UTF-8").trim();
-			String stderrString = stderr.toString("UTF-8").trim();
-
-			if ( !stdoutString.isEmpty() )
-				ValgrindLogger.log(listener, "valgrind standard out: \n" + stdoutString);
-
-			if ( !stderrString.isEmpty() )
-				ValgrindLogger.log(listener, "valgrind error out: \n" + stderrString);
+			stdout.close();
+			stderr.close();
 		}
 
+		// the reports of a killed or terminated valgrind are incomplete
+		if (fingerprint != null && !call.isTimeLimitExceeded()
+				&& (failFastThresholds == null || !failFastThresholds.isExceeded(liveAction.getCounters())))
+			storeReusableReports(run, fingerprint, outDir, reportName, reportEnding, existingReports, streamedReport, listener);
+
 		return true;
 	}
 
 	@Extension
 	public static final class DescriptorImpl extends BuildStepDescriptor<Builder>
 	{
+		private String processLimits;
+
+		public DescriptorImpl()
+		{
+			load();
+		}
+
 		@Override
 		@SuppressWarnings("rawtypes")
 		public boolean isApplicable(Class<? extends AbstractProject> aClass)
@@ -383,8 +1334,44 @@ public class ValgrindBuilder extends Builder implements SimpleBuildStep
 		@Override
 		public boolean configure(StaplerRequest req, JSONObject formData) throws FormException
 		{
+			processLimits = ValgrindUtil.trimToNull(formData.optString("processLimits", ""));
+			save();
 			return super.configure(req, formData);
 		}
+
+		/**
+		 * @return one "label expression=limit" per line, limits the number of
+		 *         valgrind processes running at the same time on the nodes
+		 *         matching the label expression
+		 */
+		public String getProcessLimits()
+		{
+			return processLimits;
+		}
+
+		public FormValidation doCheckProcessLimits(@QueryParameter String value)
+		{
+			for (String line : value.split("\n"))
+			{
+				line = line.trim();
+				if (line.isEmpty())
+					continue;
+
+				if (ValgrindProcessThrottle.parseLimits(line).isEmpty())
+					return FormValidation.error("'" + line + "' is not of the form 'label expression=limit' with a positive limit");
+
+				try
+				{
+					Label.parseExpression(line.substring(0, line.lastIndexOf('=')));
+				}
+				catch (ANTLRException e)
+				{
+					return FormValidation.error("invalid label expression in '" + line + "': " + e.getMessage());
+				}
+			}
+
+			return FormValidation.ok();
+		}
 	}
 
 	public static abstract class ValgrindTool extends AbstractDescribableImpl<ValgrindTool> implements Serializable
@@ -0,0 +1,165 @@
+package org.jenkinsci.plugins.valgrind;
+
+import hudson.model.Action;
+import hudson.model.Run;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Wall clock time of the valgrind call of each executable, keyed by report
+ * name. Stored with the build so that later builds running executables
+ * concurrently can start the longest running ones first. Only executables of
+ * this build are kept, removed executables are dropped.
+ */
+public class ValgrindDurationAction implements Action
+{
+	/**
+	 * Number of previous builds searched for durations, builds without a
+	 * valgrind builder don't have any.
+	 */
+	private static final int MAX_PREVIOUS_BUILDS = 10;
+
+	private final Map<String, Long> durations = new TreeMap<String, Long>();
+
+	/**
+	 * Durations of a previous build the executables of this build are split
+	 * into shards by, taken once for all shards of this build.
+	 */
+	private Map<String, Long> shardDurations;
+
+	public String getIconFileName()
+	{
+		return null;
+	}
+
+	public String getDisplayName()
+	{
+		return null;
+	}
+
+	public String getUrlName()
+	{
+		return null;
+	}
+
+	/**
+	 * @return duration in milliseconds per report name
+	 */
+	public synchronized Map<String, Long> getDurations()
+	{
+		return Collections.unmodifiableMap( new TreeMap<String, Long>( durations ) );
+	}
+
+	public synchronized void record( Map<String, Long> durations )
+	{
+		this.durations.putAll( durations );
+	}
+
+	/**
+	 * @param reportNames
+	 *            all executables of this build, those without a duration,
+	 *            e.g. skipped ones or ones with reused reports, keep their
+	 *            previous duration
+	 * @param previous
+	 *            action of a previous build, may be null
+	 */
+	public synchronized void record( Map<String, Long> durations, Collection<String> reportNames, ValgrindDurationAction previous )
+	{
+		if ( previous != null )
+		{
+			Map<String, Long> previousDurations = previous.getDurations();
+			for ( String reportName : reportNames )
+			{
+				Long duration = previousDurations.get( reportName );
+				if ( duration != null && !durations.containsKey( reportName ) )
+					this.durations.put( reportName, duration );
+			}
+		}
+
+		record( durations );
+	}
+
+	/**
+	 * Shards of a build may start at different times, while other builds
+	 * finish, but all of them have to split the executables alike.
+	 *
+	 * @param previous
+	 *            durations of a previous build, may be null
+	 * @return the durations of the previous build the first shard of this
+	 *         build was given, for every shard
+	 */
+	public synchronized Map<String, Long> getShardDurations( ValgrindDurationAction previous )
+	{
+		if ( shardDurations == null )
+			shardDurations = previous == null ? new TreeMap<String, Long>() : new TreeMap<String, Long>( previous.getDurations() );
+
+		return Collections.unmodifiableMap( new TreeMap<String, Long>( shardDurations ) );
+	}
+
+	/**
+	 * Orders report names by their duration, longest first. Executables that
+	 * didn't run before may take long as well and come first.
+	 */
+	public Comparator<String> longestFirst()
+	{
+		final Map<String, Long> durations = getDurations();
+
+		return new Comparator<String>()
+		{
+			public int compare( String a, String b )
+			{
+				Long da = durations.get( a );
+				Long db = durations.get( b );
+
+				if ( da == null || db == null )
+					return da == null ? (db == null ? 0 : -1) : 1;
+
+				return db.compareTo( da );
+			}
+		};
+	}
+
+	/**
+	 * Valgrind steps of a build, e.g. its shards, share the action.
+	 *
+	 * @return the action of the build, added if it has none yet
+	 */
+	public static ValgrindDurationAction forBuild( Run<?, ?> run )
+	{
+		synchronized ( run )
+		{
+			ValgrindDurationAction action = run.getAction( ValgrindDurationAction.class );
+			if ( action == null )
+			{
+				action = new ValgrindDurationAction();
+				run.addAction( action );
+			}
+
+			return action;
+		}
+	}
+
+	/**
+	 * @return the durations of the latest of the previous completed builds
+	 *         that has any, null if there is none. Builds still running may
+	 *         not have recorded all of their durations yet.
+	 */
+	public static ValgrindDurationAction findPrevious( Run<?, ?> run )
+	{
+		Run<?, ?> previous = run.getPreviousBuild();
+		for ( int i = 0; previous != null && i < MAX_PREVIOUS_BUILDS; ++i )
+		{
+			ValgrindDurationAction action = previous.getAction( ValgrindDurationAction.class );
+			if ( action != null && !previous.isBuilding() && previous.getResult() != null )
+				return action;
+
+			previous = previous.getPreviousBuild();
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,136 @@
+package org.jenkinsci.plugins.valgrind;
+
+import hudson.Util;
+import hudson.model.Action;
+import hudson.model.Run;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jenkinsci.plugins.valgrind.model.ValgrindCounters;
+import org.jenkinsci.plugins.valgrind.model.ValgrindErrorKind;
+
+/**
+ * Shows the number of errors found so far on the build page while the
+ * valgrind builder is running. The counts are not persisted, the published
+ * results replace them once the build has finished. All valgrind builder
+ * steps of a build share one action, see {@link #startStep(Run)}.
+ */
+public class ValgrindLiveAction implements Action
+{
+	private transient ValgrindCounters finished = ValgrindCounters.EMPTY;
+	private transient Map<String, ValgrindCounters> current = new LinkedHashMap<String, ValgrindCounters>();
+	private transient int runningSteps = 0;
+
+	/**
+	 * Adds the action to the build unless a previous or parallel step did
+	 * already. Every call has to be followed by a call to {@link #finish()}.
+	 *
+	 * @return the live action of the build
+	 */
+	public static ValgrindLiveAction startStep( Run<?, ?> run )
+	{
+		synchronized ( run )
+		{
+			ValgrindLiveAction action = run.getAction( ValgrindLiveAction.class );
+			if ( action == null )
+			{
+				action = new ValgrindLiveAction();
+				run.addAction( action );
+			}
+
+			synchronized ( action )
+			{
+				action.runningSteps++;
+			}
+
+			return action;
+		}
+	}
+
+	public String getIconFileName()
+	{
+		return null;
+	}
+
+	public String getDisplayName()
+	{
+		return null;
+	}
+
+	public String getUrlName()
+	{
+		return null;
+	}
+
+	public synchronized boolean isRunning()
+	{
+		return runningSteps > 0;
+	}
+
+	/**
+	 * @return the names of the executables valgrind is currently running
+	 */
+	public synchronized String getExecutables()
+	{
+		if ( current == null || current.isEmpty() )
+			return null;
+
+		return Util.join( current.keySet(), ", " );
+	}
+
+	public synchronized ValgrindCounters getCounters()
+	{
+		if ( finished == null || current == null )
+			return ValgrindCounters.EMPTY;
+
+		ValgrindCounters.Builder builder = new ValgrindCounters.Builder().add( finished );
+		for ( ValgrindCounters counters : current.values() )
+			builder.add( counters );
+
+		return builder.build();
+	}
+
+	public int getErrorCount()
+	{
+		return getCounters().getErrorCount();
+	}
+
+	public int getInvalidReadWriteCount()
+	{
+		ValgrindCounters counters = getCounters();
+		return counters.getErrorCount( ValgrindErrorKind.InvalidRead ) + counters.getErrorCount( ValgrindErrorKind.InvalidWrite );
+	}
+
+	public int getDefinitelyLostCount()
+	{
+		return getCounters().getErrorCount( ValgrindErrorKind.Leak_DefinitelyLost );
+	}
+
+	public synchronized void start( String executable )
+	{
+		current.put( executable, ValgrindCounters.EMPTY );
+	}
+
+	/**
+	 * @param counters
+	 *            counts of the given executable, which is still running
+	 */
+	public synchronized void update( String executable, ValgrindCounters counters )
+	{
+		current.put( executable, counters );
+	}
+
+	public synchronized void finishExecutable( String executable )
+	{
+		finished = new ValgrindCounters.Builder().add( finished ).add( current.remove( executable ) ).build();
+	}
+
+	/**
+	 * Called once a step has finished.
+	 */
+	public synchronized void finish()
+	{
+		runningSteps--;
+	}
+}
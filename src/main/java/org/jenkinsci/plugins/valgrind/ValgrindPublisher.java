@@ -14,16 +14,23 @@ import hudson.tasks.Recorder;
 import hudson.FilePath;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
 
 import net.sf.json.JSONObject;
 
 import org.jenkinsci.plugins.valgrind.config.ValgrindPublisherConfig;
 import org.jenkinsci.plugins.valgrind.model.ValgrindAuxiliary;
+import org.jenkinsci.plugins.valgrind.model.ValgrindCounters;
 import org.jenkinsci.plugins.valgrind.model.ValgrindError;
 import org.jenkinsci.plugins.valgrind.model.ValgrindProcess;
 import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
+import org.jenkinsci.plugins.valgrind.parser.ValgrindAgentParser;
+import org.jenkinsci.plugins.valgrind.parser.ValgrindParserEngine;
+import org.jenkinsci.plugins.valgrind.parser.ValgrindParserOptions;
 import org.jenkinsci.plugins.valgrind.parser.ValgrindParserResult;
+import org.jenkinsci.plugins.valgrind.parser.ValgrindTailScanner;
 import org.jenkinsci.plugins.valgrind.util.ValgrindEvaluator;
 import org.jenkinsci.plugins.valgrind.util.ValgrindLogger;
 import org.jenkinsci.plugins.valgrind.util.ValgrindSourceGrabber;
@@ -56,7 +63,14 @@ public class ValgrindPublisher extends Recorder implements SimpleBuildStep
 			boolean publishResultsForAbortedBuilds,
 			boolean publishResultsForFailedBuilds,
 			boolean failBuildOnMissingReports,
-			boolean failBuildOnInvalidReports)
+			boolean failBuildOnInvalidReports,
+			boolean parseOnAgent,
+			boolean discardRawReports,
+			boolean countersOnly,
+			String maxErrorsPerKind,
+			String maxFramesPerStack,
+			String maxAuxiliaryPerError,
+			String hiddenFramePatterns)
 	{
 		valgrindPublisherConfig = new ValgrindPublisherConfig(
 				pattern,
@@ -70,7 +84,14 @@ public class ValgrindPublisher extends Recorder implements SimpleBuildStep
 				publishResultsForAbortedBuilds,
 				publishResultsForFailedBuilds,
 				failBuildOnMissingReports,
-				failBuildOnInvalidReports);
+				failBuildOnInvalidReports,
+				parseOnAgent,
+				discardRawReports,
+				countersOnly,
+				maxErrorsPerKind,
+				maxFramesPerStack,
+				maxAuxiliaryPerError,
+				hiddenFramePatterns);
 	}
 
 	@Override
@@ -116,66 +137,98 @@ public class ValgrindPublisher extends Recorder implements SimpleBuildStep
 		ValgrindResultsScanner scanner = new ValgrindResultsScanner(valgrindPublisherConfig.getPattern());
 		String[] files = baseFileFrom.act(scanner);
 
-		if(files.length == 0 && valgrindPublisherConfig.isFailBuildOnMissingReports())
+		// reports of streamed xml output are stored with the build by the builder, each publisher takes its own
+		String streamedDirectory;
+		synchronized (build)
+		{
+			streamedDirectory = ValgrindResult.takeStreamedReports(build.getRootDir(), valgrindPublisherConfig.getPattern());
+		}
+
+		if(files.length == 0 && streamedDirectory == null && valgrindPublisherConfig.isFailBuildOnMissingReports())
 		{
 			ValgrindLogger.log( listener, "ERROR: no report files found for pattern '" + valgrindPublisherConfig.getPattern() + "'" );
 			build.setResult( Result.FAILURE );
 		}
 		else
 		{
-			ValgrindLogger.log(listener, "Files to copy:");
-			for (int i = 0; i < files.length; i++)
-			{
-				ValgrindLogger.log(listener, files[i]);
-			}
+			boolean parseOnAgent = valgrindPublisherConfig.isParseOnAgent();
+
+			ValgrindTailScanner.Result tail = workspace.act(new ValgrindTailScanner(valgrindPublisherConfig.getPattern()));
+			logTailSummary(listener, tail);
 
-			for (int i = 0; i < files.length; i++)
+			String resultsDirectory = ValgrindResult.RESULTS_DIRECTORY;
+			if ( !parseOnAgent || !valgrindPublisherConfig.isDiscardRawReports() )
 			{
-				FilePath fileFrom = new FilePath(baseFileFrom, files[i]);
-				FilePath fileTo = new FilePath(baseFileTo, "valgrind-plugin/valgrind-results/" + files[i]);
-				ValgrindLogger.log(listener, "Copying " + files[i] + " to " + fileTo.getRemote());
-				fileFrom.copyTo(fileTo);
+				synchronized (build)
+				{
+					resultsDirectory = ValgrindResult.allocateResultsDirectory(build.getRootDir());
+				}
+
+				ValgrindLogger.log(listener, "Files to copy:");
+				for (int i = 0; i < files.length; i++)
+				{
+					ValgrindLogger.log(listener, files[i]);
+				}
+
+				for (int i = 0; i < files.length; i++)
+				{
+					FilePath fileFrom = new FilePath(baseFileFrom, files[i]);
+					FilePath fileTo = new FilePath(baseFileTo, resultsDirectory + "/" + files[i]);
+					ValgrindLogger.log(listener, "Copying " + files[i] + " to " + fileTo.getRemote());
+					fileFrom.copyTo(fileTo);
+				}
 			}
 
-			ValgrindParserResult parser = new ValgrindParserResult("valgrind-plugin/valgrind-results/"+valgrindPublisherConfig.getPattern());
+			ValgrindParserOptions parserOptions = getParserOptions(env, listener);
+			ValgrindParserResult parser = new ValgrindParserResult(resultsDirectory + "/" + valgrindPublisherConfig.getPattern(),
+					DESCRIPTOR.getParserEngine(), parserOptions);
 
 			ValgrindResult valgrindResult = new ValgrindResult(build, parser);
-			ValgrindReport valgrindReport = valgrindResult.getReport();
-			logParserError(listener, valgrindReport);
+			ValgrindReport valgrindReport;
+			ValgrindCounters valgrindCounters;
 
-			new ValgrindEvaluator(valgrindPublisherConfig, listener).evaluate(valgrindReport, build, env);
+			if ( parseOnAgent )
+			{
+				ValgrindLogger.log(listener, "Parsing valgrind reports in " + workspace.getRemote());
 
-			ValgrindLogger.log(listener, "Analysing valgrind results");
+				ValgrindAgentParser.Result result = workspace.act(new ValgrindAgentParser(
+						new ValgrindParserResult(valgrindPublisherConfig.getPattern(), DESCRIPTOR.getParserEngine(), parserOptions)));
 
-			String resolvedSubstitutionPaths = valgrindPublisherConfig.getSourceSubstitutionPaths();
-			if (env!=null){
-				resolvedSubstitutionPaths = env.expand(resolvedSubstitutionPaths);
+				ValgrindLogger.log(listener, "Received parsed report (" + result.getCounters().getProcessCount() + " processes, "
+						+ result.getCounters().getErrorCount() + " errors)");
+				valgrindReport = result.getReport();
+				valgrindCounters = result.getCounters();
 			}
-
-			ValgrindSourceResolver sourceResolver = new ValgrindSourceResolver(resolvedSubstitutionPaths);
-			ValgrindSourceGrabber sourceGrabber = new ValgrindSourceGrabber(listener,  workspace, sourceResolver);
-
-			if ( !sourceGrabber.init( build.getRootDir() ) )
-				return;
-
-			if ( valgrindReport.getAllErrors() != null )
+			else
 			{
-				for ( ValgrindError error : valgrindReport.getAllErrors() )
-				{
-					if ( error.getStacktrace() != null )
-						sourceGrabber.grabFromStacktrace( error.getStacktrace() );
+				valgrindReport = valgrindResult.parseReport();
+				valgrindCounters = ValgrindCounters.createInstance(valgrindReport);
+			}
 
-					if ( error.getAuxiliaryData() != null )
-					{
-						for ( ValgrindAuxiliary aux : error.getAuxiliaryData() )
-						{
-							if ( aux.getStacktrace() != null )
-								sourceGrabber.grabFromStacktrace(aux.getStacktrace());
-						}
-					}
-				}
+			ValgrindParserResult streamedParser = null;
+			if ( streamedDirectory != null )
+			{
+				// snapshots written by the builder on the controller, never files of the workspace
+				streamedParser = ValgrindParserResult.forSnapshots(streamedDirectory + "/" + valgrindPublisherConfig.getPattern());
+				ValgrindReport streamedReport = new FilePath(build.getRootDir()).act(streamedParser);
+
+				ValgrindLogger.log(listener, "Adding the reports of streamed valgrind xml output");
+				valgrindReport = ValgrindResult.merge(valgrindReport, streamedReport);
+				valgrindCounters = new ValgrindCounters.Builder()
+						.add(valgrindCounters)
+						.add(ValgrindCounters.createInstance(streamedReport))
+						.build();
+				valgrindResult.addParser(streamedParser);
 			}
 
+			valgrindCounters = new ValgrindCounters.Builder()
+					.add(valgrindCounters)
+					.addOccurrences(tail.getOccurrenceCount())
+					.addSuppressed(tail.getSuppressedCount())
+					.build();
+
+			logParserError(listener, valgrindReport);
+
 			//remove workspace path from executable name
 			if ( valgrindReport.getProcesses() != null )
 			{
@@ -196,11 +249,90 @@ public class ValgrindPublisher extends Recorder implements SimpleBuildStep
 				}
 			}
 
-			valgrindResult.setSourceFiles(sourceGrabber.getLookupMap());
+			//shards of a valgrind run publish into the same build, possibly at the same time
+			synchronized (build)
+			{
+				ValgrindBuildAction publishedAction = build.getAction(ValgrindBuildAction.class);
+				if ( publishedAction != null )
+				{
+					ValgrindLogger.log(listener, "Merging with the valgrind results already published for this build");
+
+					// this publisher only parsed its own files, the published ones are added once;
+					// merged into a copy, the cached report is shared with the views
+					valgrindReport = ValgrindResult.merge(publishedAction.getResult().loadReport(), valgrindReport);
+					valgrindCounters = new ValgrindCounters.Builder()
+							.add(publishedAction.getCounters())
+							.add(valgrindCounters)
+							.build();
+
+					valgrindResult = publishedAction.getResult();
+					if ( !ValgrindResult.RESULTS_DIRECTORY.equals(resultsDirectory) )
+						valgrindResult.addParser(parser);
+					if ( streamedParser != null )
+						valgrindResult.addParser(streamedParser);
+				}
+
+				new ValgrindEvaluator(valgrindPublisherConfig, listener).evaluate(valgrindCounters, build, env);
+
+				ValgrindLogger.log(listener, "Analysing valgrind results");
+
+				String resolvedSubstitutionPaths = valgrindPublisherConfig.getSourceSubstitutionPaths();
+				if (env!=null){
+					resolvedSubstitutionPaths = env.expand(resolvedSubstitutionPaths);
+				}
+
+				ValgrindSourceResolver sourceResolver = new ValgrindSourceResolver(resolvedSubstitutionPaths);
+				ValgrindSourceGrabber sourceGrabber = new ValgrindSourceGrabber(listener,  workspace, sourceResolver);
+
+				if ( !sourceGrabber.init( build.getRootDir() ) )
+					return;
+
+				if ( publishedAction != null )
+					sourceGrabber.addExisting( valgrindResult.getSourceFiles() );
+
+				if ( valgrindReport.getAllErrors() != null )
+				{
+					for ( ValgrindError error : valgrindReport.getAllErrors() )
+					{
+						if ( error.getStacktrace() != null )
+							sourceGrabber.grabFromStacktrace( error.getStacktrace() );
+
+						if ( error.getAuxiliaryData() != null )
+						{
+							for ( ValgrindAuxiliary aux : error.getAuxiliaryData() )
+							{
+								if ( aux.getStacktrace() != null )
+									sourceGrabber.grabFromStacktrace(aux.getStacktrace());
+							}
+						}
+					}
+				}
+
+				valgrindResult.setSourceFiles(sourceGrabber.getLookupMap());
+
+				try
+				{
+					valgrindResult.saveReport(valgrindReport);
+				}
+				catch (IOException e)
+				{
+					if ( parseOnAgent && valgrindPublisherConfig.isDiscardRawReports() )
+						ValgrindLogger.log(listener, "WARN: failed to write report snapshot, the report will not be available: " + e.getMessage());
+					else
+						ValgrindLogger.log(listener, "WARN: failed to write report snapshot, reports will be parsed on demand: " + e.getMessage());
+				}
 
-			ValgrindBuildAction buildAction = new ValgrindBuildAction(build, valgrindResult,
-					valgrindPublisherConfig);
-			build.addAction(buildAction);
+				if ( publishedAction != null )
+				{
+					publishedAction.setCounters(valgrindCounters);
+				}
+				else
+				{
+					ValgrindBuildAction buildAction = new ValgrindBuildAction(build, valgrindResult,
+							valgrindPublisherConfig, valgrindCounters);
+					build.addAction(buildAction);
+				}
+			}
 
 			ValgrindLogger.log(listener, "Ending the valgrind analysis.");
 		}
@@ -219,6 +351,60 @@ public class ValgrindPublisher extends Recorder implements SimpleBuildStep
 		this.valgrindPublisherConfig = valgrindPublisherConfig;
 	}
 
+	/**
+	 * @return what the parser keeps of the reports according to this
+	 *         publisher's configuration
+	 */
+	public ValgrindParserOptions getParserOptions(EnvVars env, TaskListener listener)
+	{
+		return new ValgrindParserOptions(valgrindPublisherConfig.isCountersOnly(),
+				parseLimit(listener, env.expand(valgrindPublisherConfig.getMaxErrorsPerKind())),
+				parseLimit(listener, env.expand(valgrindPublisherConfig.getMaxFramesPerStack())),
+				parseLimit(listener, env.expand(valgrindPublisherConfig.getMaxAuxiliaryPerError())),
+				parsePatterns(env.expand(valgrindPublisherConfig.getHiddenFramePatterns())));
+	}
+
+	private int parseLimit(TaskListener listener, String limit)
+	{
+		if ( limit == null || limit.trim().isEmpty() )
+			return 0;
+
+		try
+		{
+			return Math.max(0, Integer.parseInt(limit.trim()));
+		}
+		catch( NumberFormatException e )
+		{
+			ValgrindLogger.log( listener, "ERROR: '" + limit + "' is not a valid limit, ignoring it" );
+		}
+
+		return 0;
+	}
+
+	private List<String> parsePatterns(String patterns)
+	{
+		List<String> result = new ArrayList<String>();
+		if ( patterns == null )
+			return result;
+
+		for ( String pattern : patterns.split("[,\\n]") )
+		{
+			if ( !pattern.trim().isEmpty() )
+				result.add(pattern.trim());
+		}
+
+		return result;
+	}
+
+	private void logTailSummary(TaskListener listener, ValgrindTailScanner.Result tail)
+	{
+		ValgrindLogger.log(listener, "Valgrind reported " + tail.getErrorCount() + " errors (" + tail.getOccurrenceCount()
+				+ " occurrences, " + tail.getSuppressedCount() + " suppressed) in " + tail.getFileCount() + " files, not counting leaks");
+
+		if (tail.getIncompleteFileCount() > 0)
+			ValgrindLogger.log(listener, tail.getIncompleteFileCount() + " files had no error counts, their occurrences are not included");
+	}
+
 	private void logParserError(TaskListener listener, ValgrindReport report)
 	{
 		if(report == null || report.getParserErrors() == null)
@@ -290,6 +476,41 @@ public class ValgrindPublisher extends Recorder implements SimpleBuildStep
 		return valgrindPublisherConfig.isFailBuildOnInvalidReports();
 	}
 
+	public boolean isParseOnAgent()
+	{
+		return valgrindPublisherConfig.isParseOnAgent();
+	}
+
+	public boolean isDiscardRawReports()
+	{
+		return valgrindPublisherConfig.isDiscardRawReports();
+	}
+
+	public boolean isCountersOnly()
+	{
+		return valgrindPublisherConfig.isCountersOnly();
+	}
+
+	public String getMaxErrorsPerKind()
+	{
+		return valgrindPublisherConfig.getMaxErrorsPerKind();
+	}
+
+	public String getMaxFramesPerStack()
+	{
+		return valgrindPublisherConfig.getMaxFramesPerStack();
+	}
+
+	public String getMaxAuxiliaryPerError()
+	{
+		return valgrindPublisherConfig.getMaxAuxiliaryPerError();
+	}
+
+	public String getHiddenFramePatterns()
+	{
+		return valgrindPublisherConfig.getHiddenFramePatterns();
+	}
+
 	@Extension
 	public static final ValgrindPublisherDescriptor DESCRIPTOR = new ValgrindPublisherDescriptor();
 
@@ -297,6 +518,7 @@ public class ValgrindPublisher extends Recorder implements SimpleBuildStep
 	{
 		private int	linesBefore	= 10;
 		private int	linesAfter	= 5;
+		private ValgrindParserEngine parserEngine = ValgrindParserEngine.DEFAULT;
 
 		public ValgrindPublisherDescriptor()
 		{
@@ -309,6 +531,16 @@ public class ValgrindPublisher extends Recorder implements SimpleBuildStep
 		{
 			linesBefore = formData.getInt("linesBefore");
 			linesAfter = formData.getInt("linesAfter");
+			String engine = formData.optString("parserEngine", ValgrindParserEngine.DEFAULT.name());
+			try
+			{
+				parserEngine = ValgrindParserEngine.valueOf(engine);
+			}
+			catch (IllegalArgumentException e)
+			{
+				ValgrindLogger.logWarn("unknown parser engine '" + engine + "', using " + ValgrindParserEngine.DEFAULT.name());
+				parserEngine = ValgrindParserEngine.DEFAULT;
+			}
 			save();
 			return super.configure(req, formData);
 		}
@@ -336,6 +568,20 @@ public class ValgrindPublisher extends Recorder implements SimpleBuildStep
 			return linesAfter;
 		}
 
+		public ValgrindParserEngine getParserEngine()
+		{
+			//configurations saved before the engine was configurable don't have one
+			if ( parserEngine == null )
+				return ValgrindParserEngine.DEFAULT;
+
+			return parserEngine;
+		}
+
+		public ValgrindParserEngine[] getParserEngines()
+		{
+			return ValgrindParserEngine.values();
+		}
+
 		public ValgrindPublisherConfig getConfig()
 		{
 			return new ValgrindPublisherConfig();
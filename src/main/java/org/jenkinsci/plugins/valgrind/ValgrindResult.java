@@ -2,17 +2,25 @@ package org.jenkinsci.plugins.valgrind;
 
 import hudson.model.Run;
 import hudson.FilePath;
+import hudson.Util;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.jenkinsci.plugins.valgrind.config.ValgrindPublisherConfig;
+import org.jenkinsci.plugins.valgrind.model.ValgrindCounters;
 import org.jenkinsci.plugins.valgrind.model.ValgrindError;
 import org.jenkinsci.plugins.valgrind.model.ValgrindProcess;
 import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
 import org.jenkinsci.plugins.valgrind.model.ValgrindThread;
 import org.jenkinsci.plugins.valgrind.parser.ValgrindParserResult;
+import org.jenkinsci.plugins.valgrind.parser.ValgrindReportSnapshot;
+import org.jenkinsci.plugins.valgrind.util.ValgrindLogger;
+import org.jenkinsci.plugins.valgrind.util.ValgrindReportCache;
 import org.jenkinsci.plugins.valgrind.util.ValgrindSourceFile;
 import org.jenkinsci.plugins.valgrind.util.ValgrindSummary;
 import org.kohsuke.stapler.StaplerRequest;
@@ -25,7 +33,26 @@ public class ValgrindResult implements Serializable
 	private static final long serialVersionUID = -5347879997716170059L;
 	private static final String PID_TOKEN = "pid=";
 
+	/**
+	 * Directory below the build directory the valgrind xml files are copied
+	 * to, further publishers of the same build use numbered siblings.
+	 */
+	public static final String RESULTS_DIRECTORY = "valgrind-plugin/valgrind-results";
+
+	/**
+	 * Directory below the build directory the builder stores the reports of
+	 * streamed valgrind xml output in, until a publisher takes them.
+	 */
+	public static final String STREAMED_DIRECTORY = "valgrind-plugin/valgrind-streamed";
+
+	/**
+	 * Directory below the build directory the streamed reports taken by a
+	 * publisher are moved to, further publishers use numbered siblings.
+	 */
+	private static final String PUBLISHED_STREAMED_DIRECTORY = "valgrind-plugin/valgrind-streamed-published";
+
     private ValgrindParserResult parser;
+    private List<ValgrindParserResult> additionalParsers;
     private transient Run<?, ?> owner;
     private Map<String, String> sourceFiles;
 
@@ -35,6 +62,77 @@ public class ValgrindResult implements Serializable
         this.parser = parser;
     }
 
+	/**
+	 * Each publisher of a build, e.g. one per shard of a valgrind run, gets a
+	 * directory of its own for the copied report files. Files of the same name
+	 * don't overwrite each other and each publisher parses only its own files.
+	 * The first one gets the directory all builds used before.
+	 *
+	 * @return the directory relative to the build directory, created already
+	 */
+	public static String allocateResultsDirectory(File rootDir) throws IOException
+	{
+		return allocateDirectory(rootDir, RESULTS_DIRECTORY);
+	}
+
+	private static String allocateDirectory(File rootDir, String directory) throws IOException
+	{
+		String name = directory;
+		for ( int i = 2; new File(rootDir, name).exists(); ++i )
+			name = directory + "-" + i;
+
+		File dir = new File(rootDir, name);
+		if ( !dir.mkdirs() )
+			throw new IOException("failed to create directory '" + dir.getAbsolutePath() + "'");
+
+		return name;
+	}
+
+	/**
+	 * Moves the streamed reports stored by the builder that match the pattern
+	 * into a directory of their own, so each is published only once. They are
+	 * stored below {@link #STREAMED_DIRECTORY} like the xml files would have
+	 * been below the workspace.
+	 *
+	 * @return the directory relative to the build directory, null if there
+	 *         are no streamed reports
+	 */
+	public static String takeStreamedReports(File rootDir, String pattern) throws IOException
+	{
+		File streamed = new File(rootDir, STREAMED_DIRECTORY);
+		if ( !streamed.isDirectory() )
+			return null;
+
+		String[] files = Util.createFileSet(streamed, pattern).getDirectoryScanner().getIncludedFiles();
+		if ( files.length == 0 )
+			return null;
+
+		String name = allocateDirectory(rootDir, PUBLISHED_STREAMED_DIRECTORY);
+		for ( String file : files )
+		{
+			File to = new File(rootDir, name + "/" + file);
+			to.getParentFile().mkdirs();
+
+			if ( !new File(streamed, file).renameTo(to) )
+				throw new IOException("failed to move '" + file + "' to '" + to.getAbsolutePath() + "'");
+		}
+
+		return name;
+	}
+
+	/**
+	 * @return a new report with the processes of the report already published
+	 *         for the build followed by those of the given report
+	 */
+	public static ValgrindReport merge(ValgrindReport published, ValgrindReport report)
+	{
+		ValgrindReport merged = new ValgrindReport();
+		merged.integrate(published);
+		merged.integrate(report);
+		merged.setupProcessTree();
+		return merged;
+	}
+
 	public Run<?, ?> getOwner()
 	{
 		return owner;
@@ -50,15 +148,123 @@ public class ValgrindResult implements Serializable
 	}
 
 	/**
+	 * Returns the counters stored with the build action, without loading the
+	 * report unless the build predates them.
+	 *
+	 * @return the counters of this build
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public ValgrindCounters getCounters() throws IOException, InterruptedException
+	{
+		ValgrindBuildAction action = owner.getAction(ValgrindBuildAction.class);
+		if ( action == null )
+			return ValgrindCounters.createInstance(getReport());
+
+		return action.getCounters();
+	}
+
+	/**
+	 * Returns the report of this build, shared with all other callers through
+	 * the {@link ValgrindReportCache}. The report must not be modified, see
+	 * {@link #loadReport()} for a copy of it.
+	 *
 	 * @return a ValgrindReport
 	 * @throws IOException
 	 * @throws InterruptedException
 	 */
 	public ValgrindReport getReport() throws IOException, InterruptedException
 	{
+		return ValgrindReportCache.getInstance().get(getCacheKey(), new ValgrindReportCache.Loader()
+		{
+			public ValgrindReport load() throws IOException, InterruptedException
+			{
+				return loadReport();
+			}
+		});
+	}
+
+	/**
+	 * Loads the report from the snapshot written by the publisher. Builds
+	 * published before snapshots existed are parsed from the xml files. Unlike
+	 * {@link #getReport()} this returns a new report on every call, which may be
+	 * modified.
+	 *
+	 * @return a ValgrindReport
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public ValgrindReport loadReport() throws IOException, InterruptedException
+	{
+		File snapshot = ValgrindReportSnapshot.getFile(owner.getRootDir());
+		if ( snapshot.isFile() )
+		{
+			try
+			{
+				return ValgrindReportSnapshot.read(snapshot);
+			}
+			catch (IOException e)
+			{
+				ValgrindLogger.logWarn("failed to read '" + snapshot.getAbsolutePath() + "', parsing xml reports instead: " + e.getMessage());
+			}
+		}
 
+		return parseReport();
+	}
+
+	/**
+	 * Adds the files of a further publisher of the same build, e.g. another
+	 * shard, which were archived into a results directory of their own.
+	 *
+	 * @param parser parses the files of the further publisher
+	 */
+	public void addParser(ValgrindParserResult parser)
+	{
+		if ( additionalParsers == null )
+			additionalParsers = new ArrayList<ValgrindParserResult>();
+
+		additionalParsers.add(parser);
+	}
+
+	/**
+	 * Parses the archived valgrind xml files of the build.
+	 *
+	 * @return a ValgrindReport
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public ValgrindReport parseReport() throws IOException, InterruptedException
+	{
         FilePath file = new FilePath(owner.getRootDir());
-        return file.act(parser);
+        ValgrindReport report = file.act(parser);
+
+        if ( additionalParsers != null )
+        {
+        	for ( ValgrindParserResult additionalParser : additionalParsers )
+        		report.integrate(file.act(additionalParser));
+
+        	report.setupProcessTree();
+        }
+
+        return report;
+	}
+
+	/**
+	 * Stores the given report as snapshot of this build, subsequent calls to
+	 * {@link #getReport()} will load the snapshot instead of parsing xml files.
+	 *
+	 * @param report the final report, as it should be presented
+	 * @throws IOException
+	 */
+	public void saveReport(ValgrindReport report) throws IOException
+	{
+		ValgrindReportSnapshot.write(ValgrindReportSnapshot.getFile(owner.getRootDir()), report);
+		ValgrindReportCache.getInstance().invalidate(getCacheKey());
+	}
+
+	private String getCacheKey()
+	{
+		return ValgrindReportCache.getKey(owner.getRootDir());
 	}
 
 	public Map<String, String> getSourceFiles()
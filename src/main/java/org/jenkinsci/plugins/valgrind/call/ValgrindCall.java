@@ -3,10 +3,11 @@ package org.jenkinsci.plugins.valgrind.call;
 import hudson.EnvVars;
 import hudson.FilePath;
 import hudson.Launcher;
+import hudson.Proc;
 import hudson.model.TaskListener;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -14,10 +15,29 @@ import org.jenkinsci.plugins.valgrind.util.ValgrindLogger;
 
 public class ValgrindCall
 {
+	private static final int SIGKILL = 9;
+	private static final int SIGXCPU = 24;
+
+	/**
+	 * Exit code of timeout(1) if the time limit was reached.
+	 */
+	private static final int TIMEOUT_EXIT_CODE = 124;
+
+	/**
+	 * Time valgrind gets to write the rest of its output after it was asked
+	 * to terminate, before it is killed.
+	 */
+	public static final long TERMINATE_GRACE_SECONDS = 60;
+
 	private ValgrindExecutable		valgrindExecutable;
 	private EnvVars					env;
 	private String					programName;
 	private FilePath				workingDirectory;	
+	private ValgrindCallMonitor		monitor;
+	private long					monitorInterval;
+	private long					timeLimit;
+	private long					cpuTimeLimit;
+	private boolean					timeLimitExceeded;
 
 	private List<ValgrindOption>	valgrindOptions		 = new ArrayList<ValgrindOption>();
 	private List<String>            customValgindOptions = new ArrayList<String>();
@@ -50,6 +70,50 @@ public class ValgrindCall
 		this.workingDirectory = workingDirectory;
 	}
 	
+	/**
+	 * @param monitor
+	 *            called every <code>interval</code> milliseconds while
+	 *            valgrind is running
+	 */
+	public void setMonitor(ValgrindCallMonitor monitor, long interval)
+	{
+		this.monitor = monitor;
+		this.monitorInterval = interval;
+	}
+	
+	/**
+	 * @param timeLimit
+	 *            wall clock time in milliseconds after which valgrind is
+	 *            terminated, 0 for no limit. Valgrind is terminated by
+	 *            timeout(1) on the node and gets
+	 *            {@link #TERMINATE_GRACE_SECONDS} to write the rest of its
+	 *            output, it is killed from here only if timeout(1) is not
+	 *            available.
+	 */
+	public void setTimeLimit(long timeLimit)
+	{
+		this.timeLimit = timeLimit;
+	}
+	
+	/**
+	 * @param cpuTimeLimit
+	 *            CPU time in seconds after which valgrind receives SIGXCPU, 0
+	 *            for no limit
+	 */
+	public void setCpuTimeLimit(long cpuTimeLimit)
+	{
+		this.cpuTimeLimit = cpuTimeLimit;
+	}
+	
+	/**
+	 * @return whether valgrind was terminated by the last {@link #exec} for
+	 *         exceeding the time limit or the CPU time limit
+	 */
+	public boolean isTimeLimitExceeded()
+	{
+		return timeLimitExceeded;
+	}
+	
 	public void addValgrindOption(ValgrindOption option)
 	{
 		if (option != null)
@@ -84,7 +148,10 @@ public class ValgrindCall
 		}
 	}	
 
-	public int exec(TaskListener listener, Launcher launcher, ByteArrayOutputStream stdout, ByteArrayOutputStream stderr) throws IOException, InterruptedException
+	/**
+	 * @return the expanded command line valgrind would be started with
+	 */
+	public List<String> getCommandLine(TaskListener listener)
 	{
 		if ( valgrindExecutable == null )
 			throw new IllegalStateException("valgrind executable is null");
@@ -95,9 +162,6 @@ public class ValgrindCall
 		if ( env == null )
 			throw new IllegalStateException("environment is null");
 		
-		if ( workingDirectory == null )
-			throw new IllegalStateException("working directory is null");		
-		
 		List<String> cmds = new ArrayList<String>();
 
 		cmds.add(valgrindExecutable.getExecutable());
@@ -122,6 +186,18 @@ public class ValgrindCall
 		for (String argument : programArguments)
 			cmds.add(env.expand(argument));		
 		
+		return cmds;
+	}
+
+	public int exec(TaskListener listener, Launcher launcher, OutputStream stdout, OutputStream stderr) throws IOException, InterruptedException
+	{
+		if ( workingDirectory == null )
+			throw new IllegalStateException("working directory is null");		
+		
+		List<String> cmds = getLimitedCommandLine(getCommandLine(listener));
+
+		timeLimitExceeded = false;
+
 		ValgrindLogger.log(listener, "working dir: " + workingDirectory);
 
 		Launcher.ProcStarter starter = launcher.launch();
@@ -131,7 +207,105 @@ public class ValgrindCall
 		starter = starter.cmds(cmds);
 		starter = starter.envs(env);
 
-		return starter.join();
+		long start = System.currentTimeMillis();
+
+		if ( monitor == null && timeLimit <= 0 )
+			return checkCpuTimeLimit(listener, starter.join());
+		
+		Proc proc = starter.start();
+		try
+		{
+			// valgrind should have been terminated by timeout(1) by then
+			long deadline = timeLimit > 0 ? start + timeLimit + (TERMINATE_GRACE_SECONDS + 10) * 1000 : Long.MAX_VALUE;
+			long next = monitor != null ? System.currentTimeMillis() + monitorInterval : Long.MAX_VALUE;
+			while ( proc.isAlive() )
+			{
+				// check every second whether valgrind has finished
+				Thread.sleep( Math.max( 1, Math.min( 1000, Math.min( next, deadline ) - System.currentTimeMillis() ) ) );
+				
+				if ( System.currentTimeMillis() >= deadline )
+				{
+					ValgrindLogger.log(listener, "valgrind exceeded the time limit of " + (timeLimit / 1000) + " seconds and was not terminated, killing it");
+					timeLimitExceeded = true;
+					proc.kill();
+					break;
+				}
+				
+				if ( System.currentTimeMillis() >= next )
+				{
+					if ( !monitor.poll() )
+					{
+						ValgrindLogger.log(listener, "killing valgrind");
+						proc.kill();
+						break;
+					}
+					
+					next = System.currentTimeMillis() + monitorInterval;
+				}
+			}
+		}
+		catch ( InterruptedException e )
+		{
+			proc.kill();
+			throw e;
+		}
+		
+		int exitCode = proc.join();
+
+		// a program may exit with the same code by itself, but not before the time limit
+		if ( timeLimit > 0 && !timeLimitExceeded && System.currentTimeMillis() - start >= timeLimit
+				&& ( exitCode == TIMEOUT_EXIT_CODE || exitCode == 128 + SIGKILL ) )
+		{
+			ValgrindLogger.log(listener, "valgrind exceeded the time limit of " + (timeLimit / 1000) + " seconds and was terminated");
+			timeLimitExceeded = true;
+		}
+
+		return checkCpuTimeLimit(listener, exitCode);
+	}
+
+	/**
+	 * Wraps the command line in a shell applying the time limits, on the node
+	 * valgrind runs on.
+	 */
+	List<String> getLimitedCommandLine(List<String> cmds)
+	{
+		if ( cpuTimeLimit <= 0 && timeLimit <= 0 )
+			return cmds;
+
+		StringBuilder script = new StringBuilder();
+
+		// only the soft limit, valgrind is killed right away when reaching the hard limit
+		if ( cpuTimeLimit > 0 )
+			script.append("ulimit -S -t " + cpuTimeLimit + " || exit 1; ");
+
+		// SIGTERM first, valgrind then writes the rest of its output like for a crashing program
+		if ( timeLimit > 0 )
+		{
+			long seconds = Math.max(1, (timeLimit + 999) / 1000);
+			script.append("if command -v timeout >/dev/null 2>&1; then exec timeout -k " + TERMINATE_GRACE_SECONDS + " " + seconds + " \"$@\"; fi; ");
+		}
+
+		script.append("exec \"$@\"");
+
+		List<String> limited = new ArrayList<String>();
+		limited.add("sh");
+		limited.add("-c");
+		limited.add(script.toString());
+		limited.add("sh");
+		limited.addAll(cmds);
+		return limited;
+	}
+	
+	private int checkCpuTimeLimit(TaskListener listener, int exitCode)
+	{
+		// valgrind terminates itself with the signal that terminated the program
+		if ( cpuTimeLimit > 0 && exitCode == 128 + SIGXCPU )
+		{
+			ValgrindLogger.log(listener, "valgrind exceeded the CPU time limit of " + cpuTimeLimit + " seconds");
+			timeLimitExceeded = true;
+		}
+		
+		return exitCode;
 	}
 
 }
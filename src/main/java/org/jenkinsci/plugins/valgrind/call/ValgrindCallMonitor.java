@@ -0,0 +1,14 @@
+package org.jenkinsci.plugins.valgrind.call;
+
+import java.io.IOException;
+
+/**
+ * Called periodically while valgrind is running.
+ */
+public interface ValgrindCallMonitor
+{
+	/**
+	 * @return false if valgrind should be killed
+	 */
+	boolean poll() throws IOException, InterruptedException;
+}
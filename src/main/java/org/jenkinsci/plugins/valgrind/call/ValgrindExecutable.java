@@ -1,6 +1,8 @@
 package org.jenkinsci.plugins.valgrind.call;
 
+import hudson.EnvVars;
 import hudson.Launcher;
+import hudson.remoting.VirtualChannel;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -8,12 +10,24 @@ import java.io.IOException;
 public class ValgrindExecutable
 {
 	private final String executable;
+	private final String key;
 	private final ValgrindVersion version;
 
 	public ValgrindExecutable(Launcher launcher, String executable) throws IOException, InterruptedException
+	{
+		this(launcher, executable, null);
+	}
+
+	/**
+	 * @param env
+	 *            environment valgrind is started with, null for the one of
+	 *            the node
+	 */
+	public ValgrindExecutable(Launcher launcher, String executable, EnvVars env) throws IOException, InterruptedException
 	{
 		this.executable = (executable == null || executable.trim().isEmpty()) ? "valgrind" : executable.trim();
-		this.version = detectValgrindVersion(launcher, this.executable);
+		this.key = ValgrindVersionCache.getKey(launcher.getChannel(), this.executable, env);
+		this.version = getValgrindVersion(launcher, this.executable, key, env);
 	}
 
 	public String getExecutable()
@@ -21,16 +35,47 @@ public class ValgrindExecutable
 		return executable;
 	}
 
+	/**
+	 * @return identifies the executable on the node, see
+	 *         {@link ValgrindVersionCache#getKey}
+	 */
+	public String getKey()
+	{
+		return key;
+	}
+
 	public ValgrindVersion getVersion()
 	{
 		return version;
 	}
 
-	private static ValgrindVersion detectValgrindVersion(Launcher launcher, String executable) throws IOException,
+	private static ValgrindVersion getValgrindVersion(Launcher launcher, String executable, String key, EnvVars env) throws IOException,
+			InterruptedException
+	{
+		VirtualChannel channel = launcher.getChannel();
+
+		if (key != null)
+		{
+			ValgrindVersion version = ValgrindVersionCache.get(channel, key);
+			if (version != null)
+				return version;
+		}
+
+		ValgrindVersion version = detectValgrindVersion(launcher, executable, env);
+
+		if (key != null)
+			ValgrindVersionCache.put(channel, key, version);
+
+		return version;
+	}
+
+	private static ValgrindVersion detectValgrindVersion(Launcher launcher, String executable, EnvVars env) throws IOException,
 			InterruptedException
 	{
 		ByteArrayOutputStream os = new ByteArrayOutputStream();
 		Launcher.ProcStarter starter = launcher.launch();
+		if (env != null)
+			starter = starter.envs(env);
 		starter = starter.stdout(os);
 		starter = starter.stderr(os);
 		starter = starter.cmds(executable, "--version");
@@ -0,0 +1,198 @@
+package org.jenkinsci.plugins.valgrind.call;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.jenkinsci.remoting.RoleChecker;
+
+/**
+ * Hashes everything a valgrind run of an executable depends on, i.e. the
+ * executable itself, the shared libraries it is linked against, the
+ * suppression files and the command line. Runs on the node the executable is
+ * on, the libraries are resolved with ldd. Returns null if the libraries can't
+ * be resolved.
+ */
+public class ValgrindFingerprint implements FilePath.FileCallable<String>
+{
+	private static final long serialVersionUID = 6157250362270865018L;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final List<String> arguments;
+	private final List<String> files;
+	private final Map<String, String> env;
+
+	/**
+	 * @param arguments
+	 *            the command line and anything else that affects the result
+	 * @param files
+	 *            absolute paths of further files read by valgrind, e.g.
+	 *            suppression files
+	 * @param env
+	 *            environment ldd is run with, libraries are resolved with the
+	 *            LD_LIBRARY_PATH of the build
+	 */
+	public ValgrindFingerprint(List<String> arguments, List<String> files, Map<String, String> env)
+	{
+		this.arguments = new ArrayList<String>(arguments);
+		this.files = new ArrayList<String>(files);
+		this.env = env;
+	}
+
+	public String invoke(File executable, VirtualChannel channel) throws IOException, InterruptedException
+	{
+		List<String> libraries = getLibraries(executable);
+		if (libraries == null)
+			return null;
+
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IOException(e);
+		}
+
+		for (String argument : arguments)
+			update(digest, argument);
+
+		update(digest, executable);
+
+		for (String library : libraries)
+		{
+			update(digest, library);
+			if (library.startsWith("/"))
+				update(digest, new File(library));
+		}
+
+		for (String file : files)
+		{
+			update(digest, file);
+			update(digest, new File(file));
+		}
+
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest())
+			hex.append(String.format("%02x", b & 0xff));
+
+		return hex.toString();
+	}
+
+	/**
+	 * @return the sorted paths of the shared libraries, or the ldd output line
+	 *         for libraries that were not found, empty for static executables
+	 */
+	private List<String> getLibraries(File executable) throws IOException, InterruptedException
+	{
+		ProcessBuilder builder = new ProcessBuilder("ldd", executable.getAbsolutePath());
+		builder.redirectErrorStream(true);
+		if (env != null)
+			builder.environment().putAll(env);
+
+		Process process;
+		try
+		{
+			process = builder.start();
+		}
+		catch (IOException e)
+		{
+			return null;
+		}
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		InputStream in = process.getInputStream();
+		try
+		{
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) >= 0)
+				output.write(buffer, 0, n);
+		}
+		finally
+		{
+			in.close();
+		}
+
+		// e.g. "not a dynamic executable"
+		if (process.waitFor() != 0)
+			return Collections.emptyList();
+
+		return parseLibraries(new String(output.toByteArray(), UTF_8));
+	}
+
+	public static List<String> parseLibraries(String lddOutput)
+	{
+		List<String> libraries = new ArrayList<String>();
+
+		for (String line : lddOutput.split("\n"))
+		{
+			line = line.trim();
+
+			int arrow = line.indexOf("=>");
+			String library = arrow >= 0 ? line.substring(arrow + 2).trim() : line;
+
+			// strip the load address
+			int address = library.lastIndexOf(" (0x");
+			if (address >= 0)
+				library = library.substring(0, address).trim();
+
+			if (library.startsWith("/"))
+				libraries.add(library);
+			else if (arrow >= 0)
+				libraries.add(line);
+		}
+
+		Collections.sort(libraries);
+		return libraries;
+	}
+
+	private static void update(MessageDigest digest, String s)
+	{
+		digest.update(s.getBytes(UTF_8));
+		digest.update((byte) 0);
+	}
+
+	private static void update(MessageDigest digest, File file) throws IOException
+	{
+		if (!file.isFile())
+		{
+			update(digest, "missing");
+			return;
+		}
+
+		InputStream in = new FileInputStream(file);
+		try
+		{
+			byte[] buffer = new byte[65536];
+			int n;
+			while ((n = in.read(buffer)) >= 0)
+				digest.update(buffer, 0, n);
+		}
+		finally
+		{
+			in.close();
+		}
+
+		update(digest, "");
+	}
+
+	@Override
+	public void checkRoles(RoleChecker roleChecker) throws SecurityException
+	{
+	}
+}
@@ -0,0 +1,228 @@
+package org.jenkinsci.plugins.valgrind.call;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.jenkinsci.plugins.valgrind.util.ValgrindLogger;
+
+/**
+ * Limits the number of valgrind processes running at the same time on a node,
+ * across all builds. Limits are configured per label expression, a node
+ * matching several of them is limited by each. Builds waiting for a limit
+ * take turns, each gets one process started per turn no matter how many of
+ * its processes are waiting.
+ */
+public class ValgrindProcessThrottle
+{
+	/**
+	 * Keyed by node and label expression, a changed limit is applied to the
+	 * existing entry.
+	 */
+	private static final Map<String, Limit> LIMITS = new HashMap<String, Limit>();
+
+	/**
+	 * @param limits
+	 *            one "label expression=limit" per line
+	 * @return limit per label expression in a fixed order, invalid lines are
+	 *         skipped
+	 */
+	public static Map<String, Integer> parseLimits( String limits )
+	{
+		Map<String, Integer> result = new TreeMap<String, Integer>();
+
+		if ( limits == null )
+			return result;
+
+		for ( String line : limits.split( "\n" ) )
+		{
+			line = line.trim();
+			if ( line.isEmpty() )
+				continue;
+
+			int separator = line.lastIndexOf( '=' );
+			try
+			{
+				if ( separator <= 0 )
+					throw new NumberFormatException( "no limit" );
+
+				int limit = Integer.parseInt( line.substring( separator + 1 ).trim() );
+				if ( limit <= 0 )
+					throw new NumberFormatException( "limit must be positive" );
+
+				result.put( line.substring( 0, separator ).trim(), limit );
+			}
+			catch ( NumberFormatException e )
+			{
+				ValgrindLogger.logWarn( "invalid valgrind process limit '" + line + "': " + e.getMessage() );
+			}
+		}
+
+		return result;
+	}
+
+	private static synchronized Limit getLimit( String node, String label, int limit )
+	{
+		String key = node + "\n" + label;
+
+		Limit result = LIMITS.get( key );
+		if ( result == null )
+		{
+			result = new Limit();
+			LIMITS.put( key, result );
+		}
+
+		result.setLimit( limit );
+		return result;
+	}
+
+	/**
+	 * Waits until a valgrind process may be started on the node.
+	 *
+	 * @param limits
+	 *            the limits of the labels the node matches, in a fixed order
+	 *            to not deadlock with processes waiting for the same limits
+	 * @param build
+	 *            identifies the build the process belongs to, builds take
+	 *            turns
+	 */
+	public static Permit acquire( String node, Map<String, Integer> limits, Object build ) throws InterruptedException
+	{
+		Permit permit = new Permit();
+
+		try
+		{
+			for ( Map.Entry<String, Integer> limit : limits.entrySet() )
+			{
+				Limit l = getLimit( node, limit.getKey(), limit.getValue() );
+				if ( l.acquire( build ) )
+					permit.waited = true;
+				permit.limits.add( l );
+			}
+		}
+		catch ( InterruptedException e )
+		{
+			permit.release();
+			throw e;
+		}
+
+		return permit;
+	}
+
+	/**
+	 * @return whether a valgrind process may be started on the node right
+	 *         away
+	 */
+	public static boolean isAvailable( String node, Map<String, Integer> limits )
+	{
+		for ( Map.Entry<String, Integer> limit : limits.entrySet() )
+		{
+			if ( !getLimit( node, limit.getKey(), limit.getValue() ).isAvailable() )
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Number of running processes of one label expression on one node.
+	 */
+	private static class Limit
+	{
+		private int limit;
+		private int running = 0;
+
+		/**
+		 * Number of waiting processes per build, the first build is next.
+		 */
+		private final LinkedHashMap<Object, Integer> waiting = new LinkedHashMap<Object, Integer>();
+
+		synchronized void setLimit( int limit )
+		{
+			if ( this.limit == limit )
+				return;
+
+			this.limit = limit;
+			notifyAll();
+		}
+
+		synchronized boolean isAvailable()
+		{
+			return running < limit && waiting.isEmpty();
+		}
+
+		/**
+		 * @return whether it had to wait
+		 */
+		synchronized boolean acquire( Object build ) throws InterruptedException
+		{
+			if ( isAvailable() )
+			{
+				running++;
+				return false;
+			}
+
+			Integer count = waiting.get( build );
+			waiting.put( build, count == null ? 1 : count + 1 );
+
+			try
+			{
+				while ( running >= limit || waiting.keySet().iterator().next() != build )
+					wait();
+			}
+			catch ( InterruptedException e )
+			{
+				// the build keeps its position for its other processes
+				int remaining = waiting.get( build ) - 1;
+				if ( remaining > 0 )
+					waiting.put( build, remaining );
+				else
+					waiting.remove( build );
+
+				notifyAll();
+				throw e;
+			}
+
+			running++;
+
+			// the build had its turn, its other processes wait behind the other builds
+			int remaining = waiting.remove( build ) - 1;
+			if ( remaining > 0 )
+				waiting.put( build, remaining );
+
+			notifyAll();
+			return true;
+		}
+
+		synchronized void release()
+		{
+			running--;
+			notifyAll();
+		}
+	}
+
+	public static class Permit
+	{
+		private final List<Limit> limits = new ArrayList<Limit>();
+		private boolean waited = false;
+
+		/**
+		 * @return whether a limit was reached and the process had to wait
+		 */
+		public boolean hasWaited()
+		{
+			return waited;
+		}
+
+		public void release()
+		{
+			for ( Limit limit : limits )
+				limit.release();
+
+			limits.clear();
+		}
+	}
+}
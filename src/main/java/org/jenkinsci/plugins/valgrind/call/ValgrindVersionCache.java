@@ -0,0 +1,114 @@
+package org.jenkinsci.plugins.valgrind.call;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.jenkinsci.remoting.RoleChecker;
+
+/**
+ * Versions of the valgrind executables detected so far, per node. An entry
+ * is keyed by the resolved path of the executable together with its
+ * modification time and size, so that an updated valgrind is detected again.
+ * The entries of a node are dropped with its channel, i.e. when the node
+ * reconnects.
+ */
+public class ValgrindVersionCache
+{
+	private static final Map<VirtualChannel, Map<String, ValgrindVersion>> CACHE = new WeakHashMap<VirtualChannel, Map<String, ValgrindVersion>>();
+
+	/**
+	 * @param env
+	 *            environment valgrind is started with, its PATH is used to
+	 *            look up a name without directory
+	 * @return identifies the executable on the node of the given channel, null
+	 *         if it can't be found and detected versions should not be cached
+	 */
+	public static String getKey( VirtualChannel channel, String executable, EnvVars env ) throws IOException, InterruptedException
+	{
+		if ( channel == null )
+			return null;
+
+		return new FilePath( channel, executable ).act( new Locate( env == null ? null : env.get( "PATH" ) ) );
+	}
+
+	public static synchronized ValgrindVersion get( VirtualChannel channel, String key )
+	{
+		Map<String, ValgrindVersion> versions = CACHE.get( channel );
+		return versions == null ? null : versions.get( key );
+	}
+
+	public static synchronized void put( VirtualChannel channel, String key, ValgrindVersion version )
+	{
+		Map<String, ValgrindVersion> versions = CACHE.get( channel );
+		if ( versions == null )
+		{
+			versions = new HashMap<String, ValgrindVersion>();
+			CACHE.put( channel, versions );
+		}
+
+		versions.put( key, version );
+	}
+
+	/**
+	 * Resolves the executable like the shell would, a name without directory
+	 * is looked up in the directories of the given PATH. A relative path
+	 * depends on the directory valgrind is started in and is not resolved.
+	 */
+	public static class Locate implements FilePath.FileCallable<String>
+	{
+		private static final long serialVersionUID = -3402714925830171093L;
+
+		private final String path;
+
+		public Locate( String path )
+		{
+			this.path = path;
+		}
+
+		public String invoke( File executable, VirtualChannel channel ) throws IOException, InterruptedException
+		{
+			File file = executable;
+
+			if ( executable.getParentFile() == null )
+			{
+				file = null;
+
+				if ( path == null )
+					return null;
+
+				for ( String dir : path.split( File.pathSeparator ) )
+				{
+					File candidate = new File( dir, executable.getName() );
+					if ( candidate.isFile() )
+					{
+						file = candidate;
+						break;
+					}
+				}
+			}
+
+			else if ( !executable.isAbsolute() )
+				return null;
+
+			if ( file == null || !file.isFile() )
+				return null;
+
+			// a symlink, e.g. set up by alternatives, may be pointed elsewhere
+			file = file.getCanonicalFile();
+
+			return file.getPath() + ":" + file.lastModified() + ":" + file.length();
+		}
+
+		@Override
+		public void checkRoles( RoleChecker roleChecker ) throws SecurityException
+		{
+		}
+	}
+}
@@ -24,6 +24,16 @@ public class ValgrindBuilderConfig implements Serializable
 	public boolean generateSuppressions;
 	public String  suppressionFiles;
 	public boolean removeOldReports;
+	public String liveUpdateInterval;
+	public boolean streamXml;
+	public boolean failFast;
+	public String concurrency;
+	public String outputLimit;
+	public String shardIndex;
+	public String shardCount;
+	public boolean reuseReports;
+	public String timeLimit;
+	public String cpuTimeLimit;
 
 	@DataBoundConstructor
 	public ValgrindBuilderConfig(String valgrindExecutable,
@@ -40,7 +50,17 @@ public class ValgrindBuilderConfig implements Serializable
 			boolean childSilentAfterFork,
 			boolean generateSuppressions,
 			String  suppressionFiles,
-			boolean removeOldReports)
+			boolean removeOldReports,
+			String liveUpdateInterval,
+			boolean streamXml,
+			boolean failFast,
+			String concurrency,
+			String outputLimit,
+			String shardIndex,
+			String shardCount,
+			boolean reuseReports,
+			String timeLimit,
+			String cpuTimeLimit)
 	{
 		this.valgrindExecutable = valgrindExecutable.trim();
 		this.workingDirectory = workingDirectory.trim();
@@ -57,5 +77,15 @@ public class ValgrindBuilderConfig implements Serializable
 		this.generateSuppressions = generateSuppressions;
 		this.suppressionFiles = suppressionFiles;
 		this.removeOldReports = removeOldReports;
+		this.liveUpdateInterval = liveUpdateInterval;
+		this.streamXml = streamXml;
+		this.failFast = failFast;
+		this.concurrency = concurrency;
+		this.outputLimit = outputLimit;
+		this.shardIndex = shardIndex;
+		this.shardCount = shardCount;
+		this.reuseReports = reuseReports;
+		this.timeLimit = timeLimit;
+		this.cpuTimeLimit = cpuTimeLimit;
 	}
 }
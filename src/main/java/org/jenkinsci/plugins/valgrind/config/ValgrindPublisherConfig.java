@@ -20,6 +20,13 @@ public class ValgrindPublisherConfig implements Serializable
 	private boolean publishResultsForFailedBuilds;
 	private boolean failBuildOnMissingReports;
 	private boolean failBuildOnInvalidReports;
+	private boolean parseOnAgent;
+	private boolean discardRawReports;
+	private boolean countersOnly;
+	private String maxErrorsPerKind;
+	private String maxFramesPerStack;
+	private String maxAuxiliaryPerError;
+	private String hiddenFramePatterns;
 
 	private static String saveTrim(String s)
 	{
@@ -41,7 +48,14 @@ public class ValgrindPublisherConfig implements Serializable
 			boolean publishResultsForAbortedBuilds,
 			boolean publishResultsForFailedBuilds,
 			boolean failBuildOnMissingReports,
-			boolean failBuildOnInvalidReports)
+			boolean failBuildOnInvalidReports,
+			boolean parseOnAgent,
+			boolean discardRawReports,
+			boolean countersOnly,
+			String maxErrorsPerKind,
+			String maxFramesPerStack,
+			String maxAuxiliaryPerError,
+			String hiddenFramePatterns)
 	{
 		this.pattern = pattern.trim();
 		this.failThresholdInvalidReadWrite = saveTrim(failThresholdInvalidReadWrite);
@@ -55,6 +69,13 @@ public class ValgrindPublisherConfig implements Serializable
 		this.publishResultsForFailedBuilds = publishResultsForFailedBuilds;
 		this.failBuildOnMissingReports = failBuildOnMissingReports;
 		this.failBuildOnInvalidReports = failBuildOnInvalidReports;
+		this.parseOnAgent = parseOnAgent;
+		this.discardRawReports = discardRawReports;
+		this.countersOnly = countersOnly;
+		this.maxErrorsPerKind = saveTrim(maxErrorsPerKind);
+		this.maxFramesPerStack = saveTrim(maxFramesPerStack);
+		this.maxAuxiliaryPerError = saveTrim(maxAuxiliaryPerError);
+		this.hiddenFramePatterns = saveTrim(hiddenFramePatterns);
 	}
 
 	public ValgrindPublisherConfig()
@@ -119,4 +140,39 @@ public class ValgrindPublisherConfig implements Serializable
 	{
 		return failBuildOnInvalidReports;
 	}
+
+	public boolean isParseOnAgent()
+	{
+		return parseOnAgent;
+	}
+
+	public boolean isDiscardRawReports()
+	{
+		return discardRawReports;
+	}
+
+	public boolean isCountersOnly()
+	{
+		return countersOnly;
+	}
+
+	public String getMaxErrorsPerKind()
+	{
+		return maxErrorsPerKind;
+	}
+
+	public String getMaxFramesPerStack()
+	{
+		return maxFramesPerStack;
+	}
+
+	public String getMaxAuxiliaryPerError()
+	{
+		return maxAuxiliaryPerError;
+	}
+
+	public String getHiddenFramePatterns()
+	{
+		return hiddenFramePatterns;
+	}
 }
@@ -0,0 +1,245 @@
+package org.jenkinsci.plugins.valgrind.model;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable per kind error counts and leak sums of a report. Computed once
+ * when the results are published and stored with the build, so trend graphs
+ * and summaries don't need to load the report.
+ */
+public class ValgrindCounters implements Serializable
+{
+	private static final long serialVersionUID = 2754961263349104311L;
+
+	public static final ValgrindCounters EMPTY = new Builder().build();
+
+	private final Map<ValgrindErrorKind, Integer> errorCounts;
+	private final Map<ValgrindErrorKind, Long> leakedBytes;
+	private final Map<ValgrindErrorKind, Long> leakedBlocks;
+	private final int errorCount;
+	private final int processCount;
+	private final int threadCount;
+	private final int parserErrorCount;
+	private final long occurrenceCount;
+	private final long suppressedCount;
+
+	private ValgrindCounters(Builder builder)
+	{
+		this.errorCounts = Collections.unmodifiableMap(new EnumMap<ValgrindErrorKind, Integer>(builder.errorCounts));
+		this.leakedBytes = Collections.unmodifiableMap(new EnumMap<ValgrindErrorKind, Long>(builder.leakedBytes));
+		this.leakedBlocks = Collections.unmodifiableMap(new EnumMap<ValgrindErrorKind, Long>(builder.leakedBlocks));
+		this.errorCount = builder.errorCount;
+		this.processCount = builder.processCount;
+		this.threadCount = builder.threadCount;
+		this.parserErrorCount = builder.parserErrorCount;
+		this.occurrenceCount = builder.occurrenceCount;
+		this.suppressedCount = builder.suppressedCount;
+	}
+
+	public static ValgrindCounters createInstance(ValgrindReport report)
+	{
+		Builder builder = new Builder();
+
+		if ( report == null )
+			return builder.build();
+
+		List<ValgrindProcess> processes = report.getProcesses();
+		if ( processes != null )
+		{
+			for ( ValgrindProcess process : processes )
+			{
+				builder.addProcess();
+
+				if ( process.getThreads() != null )
+					builder.addThreads(process.getThreads().size());
+			}
+		}
+
+		List<ValgrindError> errors = report.getAllErrors();
+		if ( errors != null )
+		{
+			for ( ValgrindError error : errors )
+				builder.addError(error);
+		}
+
+		builder.add(report.getOmittedErrors());
+
+		if ( report.getParserErrors() != null )
+			builder.addParserErrors(report.getParserErrors().size());
+
+		return builder.build();
+	}
+
+	public int getErrorCount()
+	{
+		return errorCount;
+	}
+
+	public int getErrorCount(ValgrindErrorKind kind)
+	{
+		Integer count = errorCounts.get(kind);
+		return count == null ? 0 : count.intValue();
+	}
+
+	public long getLeakedBytes(ValgrindErrorKind kind)
+	{
+		Long bytes = leakedBytes.get(kind);
+		return bytes == null ? 0 : bytes.longValue();
+	}
+
+	public long getLeakedBlocks(ValgrindErrorKind kind)
+	{
+		Long blocks = leakedBlocks.get(kind);
+		return blocks == null ? 0 : blocks.longValue();
+	}
+
+	public int getProcessCount()
+	{
+		return processCount;
+	}
+
+	public int getThreadCount()
+	{
+		return threadCount;
+	}
+
+	public int getParserErrorCount()
+	{
+		return parserErrorCount;
+	}
+
+	public boolean hasParserErrors()
+	{
+		return parserErrorCount > 0;
+	}
+
+	/**
+	 * @return how often the reported non leak errors occurred according to
+	 *         valgrind's error counts, 0 if unknown
+	 */
+	public long getOccurrenceCount()
+	{
+		return occurrenceCount;
+	}
+
+	/**
+	 * @return how often suppressed errors occurred according to valgrind's
+	 *         suppression counts
+	 */
+	public long getSuppressedCount()
+	{
+		return suppressedCount;
+	}
+
+	public static class Builder
+	{
+		private final Map<ValgrindErrorKind, Integer> errorCounts = new EnumMap<ValgrindErrorKind, Integer>(ValgrindErrorKind.class);
+		private final Map<ValgrindErrorKind, Long> leakedBytes = new EnumMap<ValgrindErrorKind, Long>(ValgrindErrorKind.class);
+		private final Map<ValgrindErrorKind, Long> leakedBlocks = new EnumMap<ValgrindErrorKind, Long>(ValgrindErrorKind.class);
+		private int errorCount;
+		private int processCount;
+		private int threadCount;
+		private int parserErrorCount;
+		private long occurrenceCount;
+		private long suppressedCount;
+
+		public Builder addError(ValgrindError error)
+		{
+			if ( error == null )
+				return this;
+
+			return addError(error.getKind(), error.getLeakedBytes(), error.getLeakedBlocks());
+		}
+
+		public Builder addError(ValgrindErrorKind kind, Integer bytes, Integer blocks)
+		{
+			errorCount++;
+
+			if ( kind == null )
+				return this;
+
+			Integer count = errorCounts.get(kind);
+			errorCounts.put(kind, count == null ? 1 : count.intValue() + 1);
+
+			if ( bytes != null )
+				add(leakedBytes, kind, bytes.longValue());
+
+			if ( blocks != null )
+				add(leakedBlocks, kind, blocks.longValue());
+
+			return this;
+		}
+
+		public Builder addProcess()
+		{
+			processCount++;
+			return this;
+		}
+
+		public Builder addThreads(int count)
+		{
+			threadCount += count;
+			return this;
+		}
+
+		public Builder addParserErrors(int count)
+		{
+			parserErrorCount += count;
+			return this;
+		}
+
+		public Builder addOccurrences(long count)
+		{
+			occurrenceCount += count;
+			return this;
+		}
+
+		public Builder addSuppressed(long count)
+		{
+			suppressedCount += count;
+			return this;
+		}
+
+		public Builder add(ValgrindCounters counters)
+		{
+			if ( counters == null )
+				return this;
+
+			for ( Map.Entry<ValgrindErrorKind, Integer> e : counters.errorCounts.entrySet() )
+			{
+				Integer count = errorCounts.get(e.getKey());
+				errorCounts.put(e.getKey(), count == null ? e.getValue() : count.intValue() + e.getValue().intValue());
+			}
+
+			for ( Map.Entry<ValgrindErrorKind, Long> e : counters.leakedBytes.entrySet() )
+				add(leakedBytes, e.getKey(), e.getValue().longValue());
+
+			for ( Map.Entry<ValgrindErrorKind, Long> e : counters.leakedBlocks.entrySet() )
+				add(leakedBlocks, e.getKey(), e.getValue().longValue());
+
+			errorCount += counters.errorCount;
+			processCount += counters.processCount;
+			threadCount += counters.threadCount;
+			parserErrorCount += counters.parserErrorCount;
+			occurrenceCount += counters.occurrenceCount;
+			suppressedCount += counters.suppressedCount;
+
+			return this;
+		}
+
+		public ValgrindCounters build()
+		{
+			return new ValgrindCounters(this);
+		}
+
+		private static void add(Map<ValgrindErrorKind, Long> map, ValgrindErrorKind kind, long value)
+		{
+			Long sum = map.get(kind);
+			map.put(kind, sum == null ? value : sum.longValue() + value);
+		}
+	}
+}
@@ -2,7 +2,9 @@ package org.jenkinsci.plugins.valgrind.model;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.jenkinsci.plugins.valgrind.util.ValgrindErrorList;
 
@@ -19,9 +21,13 @@ public class ValgrindProcess implements Serializable
 	private String ppid;
 	private List<ValgrindError> errors;
 	private List<ValgrindThread> threads;
+	private ValgrindCounters omittedErrors;
 	
 	private transient ValgrindProcess parent = null;
 	private transient List<ValgrindProcess> childs = null;
+	private transient volatile ValgrindErrorList errorList = null;
+	private transient volatile Map<String, ValgrindError> errorsByUniqueId = null;
+	private transient volatile Map<String, ValgrindThread> threadsByHthreadid = null;
 	
 	public boolean isValid()
 	{
@@ -120,6 +126,8 @@ public class ValgrindProcess implements Serializable
 	public void setErrors(List<ValgrindError> errors)
 	{
 		this.errors = errors;
+		this.errorList = null;
+		this.errorsByUniqueId = null;
 	}
 
 	public void addError(ValgrindError error)
@@ -128,23 +136,56 @@ public class ValgrindProcess implements Serializable
 			errors = new ArrayList<ValgrindError>();
 		
 		errors.add(error);
+		errorList = null;
+		errorsByUniqueId = null;
 	}
 	
 	public ValgrindError findErrorByUniqueId(String id)
 	{
-		if ( errors == null )
+		if ( errors == null || id == null )
 			return null;
 		
-		for( ValgrindError error : errors )
-			if ( error.getUniqueId().equals(id) )
-				return error;
+		Map<String, ValgrindError> index = errorsByUniqueId;
+		if ( index == null )
+		{
+			index = new HashMap<String, ValgrindError>();
+			for( ValgrindError error : errors )
+			{
+				if ( error.getUniqueId() != null && !index.containsKey(error.getUniqueId()) )
+					index.put(error.getUniqueId(), error);
+			}
+			
+			errorsByUniqueId = index;
+		}
 		
-		return null;
+		return index.get(id);
+	}
+	
+	/**
+	 * @return counters of the errors of this process that were counted but not
+	 *         recorded in detail, or null if all errors were recorded
+	 */
+	public ValgrindCounters getOmittedErrors()
+	{
+		return omittedErrors;
+	}
+	
+	public void setOmittedErrors(ValgrindCounters omittedErrors)
+	{
+		this.omittedErrors = omittedErrors;
+		this.errorList = null;
 	}
 	
 	public ValgrindErrorList getErrorList()
 	{
-		return new ValgrindErrorList(errors);
+		ValgrindErrorList list = errorList;
+		if ( list == null )
+		{
+			list = new ValgrindErrorList(errors, omittedErrors);
+			errorList = list;
+		}
+		
+		return list;
 	}
 	
 	public List<ValgrindThread> getThreads()
@@ -155,6 +196,7 @@ public class ValgrindProcess implements Serializable
 	public void setThreads(List<ValgrindThread> threads)
 	{
 		this.threads = threads;
+		this.threadsByHthreadid = null;
 	}
 	
 	public void addThread(ValgrindThread thread)
@@ -163,38 +205,47 @@ public class ValgrindProcess implements Serializable
 			threads = new ArrayList<ValgrindThread>();
 		
 		threads.add(thread);
+		threadsByHthreadid = null;
 	}
 	
 	public ValgrindThread findThreadByHthreadid(String hthreadid)
 	{
-		if ( threads == null )
+		if ( threads == null || hthreadid == null )
 			return null;
 		
-		for( ValgrindThread thread : threads )
-			if ( thread.getHthreadid().equals(hthreadid) )
-				return thread;
+		Map<String, ValgrindThread> index = threadsByHthreadid;
+		if ( index == null )
+		{
+			index = new HashMap<String, ValgrindThread>();
+			for( ValgrindThread thread : threads )
+			{
+				if ( thread.getHthreadid() != null && !index.containsKey(thread.getHthreadid()) )
+					index.put(thread.getHthreadid(), thread);
+			}
+			
+			threadsByHthreadid = index;
+		}
 		
-		return null;
+		return index.get(hthreadid);
+	}
+	
+	void clearParentChilds()
+	{
+		parent = null;
+		childs = null;
 	}
 	
-	public void setupParentChilds( List<ValgrindProcess> processes )
+	void setParent(ValgrindProcess parent)
 	{
-		if ( parent != null || childs != null || processes == null )
-			return;
+		this.parent = parent;
+	}
+	
+	void addChild(ValgrindProcess child)
+	{
+		if ( childs == null )
+			childs = new ArrayList<ValgrindProcess>();
 		
-		for ( ValgrindProcess p : processes )
-		{
-			if ( parent == null && ppid != null && ppid.equals(p.pid) )
-				parent = p;
-			
-			if ( pid != null && pid.equals(p.ppid) )
-			{
-				if ( childs == null )
-					childs = new ArrayList<ValgrindProcess>();
-				
-				childs.add(p);
-			}
-		}
+		childs.add(child);
 	}
 	
 	String concatArguments(List<String> args)
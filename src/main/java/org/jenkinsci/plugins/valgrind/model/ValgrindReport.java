@@ -23,6 +23,11 @@ public class ValgrindReport implements Serializable
 	private List<ValgrindProcess> processes;
 	private Map<String, String> parserErrors;
 	
+	private transient volatile ValgrindErrorList errorList = null;
+	private transient volatile long errorListModificationCount = 0;
+	private transient volatile long modificationCount = 0;
+	private transient volatile Map<String, ValgrindProcess> processesByPid = null;
+	
 	public boolean isValid()
 	{
 		if(processes == null || processes.isEmpty())
@@ -43,6 +48,8 @@ public class ValgrindReport implements Serializable
 			processes = new ArrayList<ValgrindProcess>();
 		
 		processes.add( process );
+		modificationCount++;
+		processesByPid = null;
 	}
 	
 	public void addParserError(String filename, String errorMessage)
@@ -86,15 +93,53 @@ public class ValgrindReport implements Serializable
 		return list;		
 	}
 	
+	/**
+	 * @return counters of the errors of all processes that were counted but
+	 *         not recorded in detail, or null if all errors were recorded
+	 */
+	public ValgrindCounters getOmittedErrors()
+	{
+		if ( processes == null )
+			return null;
+		
+		ValgrindCounters.Builder builder = null;
+		for ( ValgrindProcess p : processes )
+		{
+			if ( p.getOmittedErrors() == null )
+				continue;
+			
+			if ( builder == null )
+				builder = new ValgrindCounters.Builder();
+			
+			builder.add( p.getOmittedErrors() );
+		}
+		
+		if ( builder == null )
+			return null;
+		
+		return builder.build();
+	}
+	
 	public void integrate( ValgrindReport valgrindReport )
 	{
-		if ( valgrindReport == null || valgrindReport.processes == null )
+		if ( valgrindReport == null )
+			return;
+		
+		if ( valgrindReport.parserErrors != null )
+		{
+			for ( Map.Entry<String, String> e : valgrindReport.parserErrors.entrySet() )
+				addParserError( e.getKey(), e.getValue() );
+		}
+		
+		if ( valgrindReport.processes == null )
 			return;
 		
 		if ( processes == null )
 			processes = new ArrayList<ValgrindProcess>();
 		
 		processes.addAll(valgrindReport.processes);
+		modificationCount++;
+		processesByPid = null;
 	}	
 	
 	@SuppressWarnings("deprecation")
@@ -116,17 +161,9 @@ public class ValgrindReport implements Serializable
 	@SuppressWarnings("deprecation")
 	public ValgrindProcess findProcess(String pid)
 	{
-		if ( processes != null )
-		{
-			for ( ValgrindProcess process : processes )
-			{
-				if ( process.getPid().equals(pid) )
-				{
-					process.setupParentChilds( processes );
-					return process;
-				}
-			}
-		}		
+		ValgrindProcess found = getProcessesByPid().get(pid);
+		if ( found != null )
+			return found;
 		
 		ValgrindProcess process = new ValgrindProcess();
 		process.setExecutable(pid);
@@ -144,9 +181,45 @@ public class ValgrindReport implements Serializable
 		return process;
 	}
 
+	private Map<String, ValgrindProcess> getProcessesByPid()
+	{
+		Map<String, ValgrindProcess> index = processesByPid;
+		if ( index != null )
+			return index;
+		
+		index = new HashMap<String, ValgrindProcess>();
+		if ( processes != null )
+		{
+			for ( ValgrindProcess process : processes )
+			{
+				// keep the first process, like a linear search would
+				if ( process.getPid() != null && !index.containsKey(process.getPid()) )
+					index.put(process.getPid(), process);
+			}
+		}
+		
+		processesByPid = index;
+		return index;
+	}
+
+	/**
+	 * The list is cached until processes are added or the report is set up
+	 * again, see {@link #setupProcessTree()}, e.g. after errors were added to
+	 * its processes.
+	 */
 	public ValgrindErrorList getErrorList()
 	{
-		return new ValgrindErrorList(getAllErrors());
+		long count = modificationCount;
+		
+		ValgrindErrorList list = errorList;
+		if ( list == null || errorListModificationCount != count )
+		{
+			list = new ValgrindErrorList(getAllErrors(), getOmittedErrors());
+			errorListModificationCount = count;
+			errorList = list;
+		}
+		
+		return list;
 	}
 	
 	@SuppressWarnings("deprecation")
@@ -190,12 +263,49 @@ public class ValgrindReport implements Serializable
 		if ( result.isEmpty() )
 			return null;
 		
-		for( ValgrindProcess p : result )
-			p.setupParentChilds( processes );
-		
 		return result;
 	}
 
+	/**
+	 * Links every process to its parent and child processes, using the pid
+	 * index so that the whole tree is built in a single pass. Called once the
+	 * report is assembled, i.e. after parsing, merging or reading a report.
+	 */
+	public synchronized void setupProcessTree()
+	{
+		modificationCount++;
+		
+		if ( processes == null )
+			return;
+		
+		Map<String, ValgrindProcess> index = getProcessesByPid();
+		
+		for ( ValgrindProcess p : processes )
+			p.clearParentChilds();
+		
+		for ( ValgrindProcess p : processes )
+		{
+			if ( p.getPpid() == null )
+				continue;
+			
+			ValgrindProcess parent = index.get(p.getPpid());
+			if ( parent == null || parent == p )
+				continue;
+			
+			p.setParent(parent);
+			parent.addChild(p);
+		}
+	}
+	
+	/**
+	 * The links between processes are not stored.
+	 */
+	private Object readResolve()
+	{
+		setupProcessTree();
+		return this;
+	}
+
 	public ValgrindThread findThread(String pid, String hthreadid)
 	{
 		ValgrindProcess process = findProcess(pid);
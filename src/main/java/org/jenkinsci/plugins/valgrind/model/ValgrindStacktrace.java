@@ -54,7 +54,12 @@ public class ValgrindStacktrace implements Serializable
 		List<String> files = new ArrayList<String>();
 		
 		for( ValgrindStacktraceFrame frame : frames )
-			files.add( frame.getFileName() + "(" + frame.getLineNumber() + ")" );			
+		{
+			if ( frame.isHidden() )
+				continue;
+			
+			files.add( frame.getFileName() + "(" + frame.getLineNumber() + ")" );
+		}			
 		
 		return StringUtils.join( files, ", " );
 	}
@@ -15,9 +15,13 @@ public class ValgrindStacktraceFrame implements Serializable
 	private Integer lineNumber;
 	private String functionName;
 	private transient String sourceCode = null;
+	private int hiddenFrameCount = 0;
 	
 	public String toString()
 	{
+		if ( isHidden() )
+			return hiddenFrameCount + " hidden frames";
+		
 		return 
 		"object    : " + objectName + "\n" +
 		"function  : " + functionName + "\n" +
@@ -91,6 +95,25 @@ public class ValgrindStacktraceFrame implements Serializable
 		return directoryName + "/" + fileName;
 	}
 	
+	/**
+	 * @return true if this frame is a placeholder for frames that were hidden
+	 *         while parsing
+	 */
+	public boolean isHidden()
+	{
+		return hiddenFrameCount > 0;
+	}
+	
+	public int getHiddenFrameCount()
+	{
+		return hiddenFrameCount;
+	}
+	
+	public void addHiddenFrame()
+	{
+		hiddenFrameCount++;
+	}
+	
 	public String getFilePathAndLine()
 	{
 		String filePath = getFilePath();
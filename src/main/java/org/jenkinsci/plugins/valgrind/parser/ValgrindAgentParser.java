@@ -0,0 +1,66 @@
+package org.jenkinsci.plugins.valgrind.parser;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+
+import org.jenkinsci.plugins.valgrind.model.ValgrindCounters;
+import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
+import org.jenkinsci.remoting.RoleChecker;
+
+/**
+ * Parses the valgrind xml files where they are, usually on the agent that ran
+ * valgrind, and returns the report together with its counters. Only the
+ * parsed report is transferred to the controller, through the channel's
+ * class filter.
+ */
+public class ValgrindAgentParser implements FilePath.FileCallable<ValgrindAgentParser.Result>
+{
+	private static final long serialVersionUID = 4380386716294578214L;
+
+	private final ValgrindParserResult parser;
+
+	public ValgrindAgentParser( ValgrindParserResult parser )
+	{
+		this.parser = parser;
+	}
+
+	public Result invoke( File basedir, VirtualChannel channel ) throws IOException, InterruptedException
+	{
+		ValgrindReport report = parser.invoke( basedir, channel );
+
+		return new Result( report, ValgrindCounters.createInstance( report ) );
+	}
+
+	@Override
+	public void checkRoles( RoleChecker roleChecker ) throws SecurityException
+	{
+	}
+
+	public static class Result implements Serializable
+	{
+		private static final long serialVersionUID = -3034386372129843720L;
+
+		private final ValgrindReport report;
+		private final ValgrindCounters counters;
+
+		public Result( ValgrindReport report, ValgrindCounters counters )
+		{
+			this.report = report;
+			this.counters = counters;
+		}
+
+		public ValgrindReport getReport()
+		{
+			return report;
+		}
+
+		public ValgrindCounters getCounters()
+		{
+			return counters;
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package org.jenkinsci.plugins.valgrind.parser;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.types.FileSet;
+import org.jenkinsci.plugins.valgrind.model.ValgrindCounters;
+import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
+import org.jenkinsci.remoting.RoleChecker;
+
+/**
+ * Counts the errors in valgrind xml files that are still being written. Each
+ * call only reads the data appended since the previous call and evaluates the
+ * complete <code>&lt;error&gt;</code> elements in it, an error that is only
+ * partially written is read again by the next call.
+ *
+ * The first call should be made before valgrind is started, without a state,
+ * so that data of files left over from earlier runs is not counted.
+ */
+public class ValgrindLiveScanner implements FilePath.FileCallable<ValgrindLiveScanner.State>
+{
+	private static final long serialVersionUID = 8230914715482309442L;
+
+	private static final int INITIAL_CHUNK_SIZE = 1024 * 1024;
+	private static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+
+	// only used to locate the ascii tags, byte offsets equal char offsets
+	private static final Charset CHARSET = Charset.forName( "ISO-8859-1" );
+
+	private static final String ERROR_START = "<error>";
+	private static final String ERROR_END = "</error>";
+
+	private final String pattern;
+	private final ValgrindParserEngine engine;
+	private final State state;
+
+	/**
+	 * @param pattern
+	 *            ant pattern of the xml files, relative to the directory this
+	 *            callable is invoked on
+	 * @param engine
+	 *            parser engine for the error elements
+	 * @param state
+	 *            result of the previous call, or null to only record the
+	 *            current size of existing files
+	 */
+	public ValgrindLiveScanner( String pattern, ValgrindParserEngine engine, State state )
+	{
+		this.pattern = pattern;
+		this.engine = engine;
+		this.state = state;
+	}
+
+	public State invoke( File basedir, VirtualChannel channel ) throws IOException, InterruptedException
+	{
+		FileSet fs = Util.createFileSet( basedir, pattern );
+		DirectoryScanner ds = fs.getDirectoryScanner();
+
+		State next = state == null ? new State() : new State( state );
+
+		for ( String fileName : ds.getIncludedFiles() )
+		{
+			File file = new File( basedir, fileName );
+
+			if ( state == null )
+			{
+				next.offsets.put( fileName, file.length() );
+				continue;
+			}
+
+			Long offset = next.offsets.get( fileName );
+
+			// a file that was replaced, e.g. because of a reused process id
+			if ( offset != null && offset.longValue() > file.length() )
+				offset = null;
+
+			next.offsets.put( fileName, scan( file, offset == null ? 0 : offset.longValue(), next ) );
+		}
+
+		return next;
+	}
+
+	/**
+	 * @return the offset following the last complete error element
+	 */
+	private long scan( File file, long offset, State next ) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile( file, "r" );
+		try
+		{
+			long length = raf.length();
+			int chunkSize = INITIAL_CHUNK_SIZE;
+
+			while ( offset < length )
+			{
+				int n = (int) Math.min( chunkSize, length - offset );
+				byte[] buffer = new byte[n];
+				raf.seek( offset );
+				raf.readFully( buffer );
+
+				String s = new String( buffer, CHARSET );
+				int start = s.indexOf( ERROR_START );
+				int end = s.lastIndexOf( ERROR_END );
+
+				if ( start < 0 )
+				{
+					if ( n <= ERROR_START.length() )
+						break;
+
+					// nothing but preamble or status elements, but the chunk
+					// may end with the beginning of an error
+					offset += n - ERROR_START.length();
+					continue;
+				}
+
+				if ( end < start )
+				{
+					if ( start > 0 )
+					{
+						offset += start;
+						continue;
+					}
+
+					// an error element larger than the chunk
+					if ( n == chunkSize && chunkSize < MAX_CHUNK_SIZE )
+					{
+						chunkSize *= 2;
+						continue;
+					}
+
+					break;
+				}
+
+				end += ERROR_END.length();
+				count( buffer, start, end, next );
+				offset += end;
+			}
+
+			return offset;
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	private void count( byte[] buffer, int start, int end, State next ) throws IOException
+	{
+		ByteArrayOutputStream xml = new ByteArrayOutputStream( end - start + 64 );
+		xml.write( "<valgrindoutput>".getBytes( CHARSET ) );
+		xml.write( buffer, start, end - start );
+		xml.write( "</valgrindoutput>".getBytes( CHARSET ) );
+
+		ValgrindReport report;
+		try
+		{
+			report = engine.createParser( new ValgrindParserOptions( true ) ).parse( new ByteArrayInputStream( xml.toByteArray() ) );
+		}
+		catch ( IOException e )
+		{
+			throw e;
+		}
+		catch ( Exception e )
+		{
+			throw new IOException( e );
+		}
+
+		if ( report == null )
+			return;
+
+		next.counters = new ValgrindCounters.Builder()
+				.add( next.counters )
+				.add( report.getOmittedErrors() )
+				.build();
+	}
+
+	@Override
+	public void checkRoles( RoleChecker roleChecker ) throws SecurityException
+	{
+	}
+
+	public static class State implements Serializable
+	{
+		private static final long serialVersionUID = -4017633372658957148L;
+
+		private final Map<String, Long> offsets;
+		private ValgrindCounters counters;
+
+		private State()
+		{
+			this.offsets = new HashMap<String, Long>();
+			this.counters = ValgrindCounters.EMPTY;
+		}
+
+		private State( State other )
+		{
+			this.offsets = new HashMap<String, Long>( other.offsets );
+			this.counters = other.counters;
+		}
+
+		/**
+		 * @return the counts of all errors read so far
+		 */
+		public ValgrindCounters getCounters()
+		{
+			return counters;
+		}
+
+	}
+}
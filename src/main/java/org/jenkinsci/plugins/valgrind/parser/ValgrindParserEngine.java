@@ -0,0 +1,44 @@
+package org.jenkinsci.plugins.valgrind.parser;
+
+/**
+ * The xml parsers available for reading valgrind xml files.
+ */
+public enum ValgrindParserEngine
+{
+	SAX("SAX (push parser)"),
+	STAX("StAX (pull parser, skips unused elements)");
+
+	/**
+	 * StAX is the default, it was about 20% faster than SAX on large memcheck
+	 * reports with the parsers of the JDK.
+	 */
+	public static final ValgrindParserEngine DEFAULT = STAX;
+
+	private final String displayName;
+
+	private ValgrindParserEngine( String displayName )
+	{
+		this.displayName = displayName;
+	}
+
+	public String getDisplayName()
+	{
+		return displayName;
+	}
+
+	public ValgrindReportParser createParser()
+	{
+		return createParser( ValgrindParserOptions.DEFAULT );
+	}
+
+	public ValgrindReportParser createParser( ValgrindParserOptions options )
+	{
+		switch ( this )
+		{
+		case SAX:
+			return new ValgrindSaxParser( options );
+		default:
+			return new ValgrindStaxParser( options );
+		}
+	}
+}
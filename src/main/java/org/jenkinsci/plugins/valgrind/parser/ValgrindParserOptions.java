@@ -0,0 +1,130 @@
+package org.jenkinsci.plugins.valgrind.parser;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+import org.jenkinsci.plugins.valgrind.model.ValgrindStacktraceFrame;
+
+/**
+ * Controls how much of a valgrind xml file is kept in the parsed report.
+ * Errors that are not kept are still counted, see
+ * {@link org.jenkinsci.plugins.valgrind.model.ValgrindProcess#getOmittedErrors()}.
+ */
+public class ValgrindParserOptions implements Serializable
+{
+	private static final long serialVersionUID = -2446916127581387263L;
+
+	public static final ValgrindParserOptions DEFAULT = new ValgrindParserOptions(false);
+
+	private final boolean countersOnly;
+	private final int maxErrorsPerKind;
+	private final int maxFramesPerStack;
+	private final int maxAuxiliaryPerError;
+	private final List<String> hiddenFramePatterns;
+
+	/**
+	 * @param countersOnly
+	 *            if set, errors are only counted per process and kind, no
+	 *            error details or stack traces are kept
+	 */
+	public ValgrindParserOptions( boolean countersOnly )
+	{
+		this( countersOnly, 0, 0, 0, null );
+	}
+
+	public ValgrindParserOptions( boolean countersOnly, int maxErrorsPerKind, int maxFramesPerStack, int maxAuxiliaryPerError )
+	{
+		this( countersOnly, maxErrorsPerKind, maxFramesPerStack, maxAuxiliaryPerError, null );
+	}
+
+	/**
+	 * @param countersOnly
+	 *            if set, errors are only counted per process and kind, no
+	 *            error details or stack traces are kept
+	 * @param maxErrorsPerKind
+	 *            number of errors of each kind kept per process, 0 for no limit
+	 * @param maxFramesPerStack
+	 *            number of frames kept per stack trace, 0 for no limit
+	 * @param maxAuxiliaryPerError
+	 *            number of auxiliary descriptions kept per error, 0 for no
+	 *            limit
+	 * @param hiddenFramePatterns
+	 *            ant style patterns for object and source file names of frames
+	 *            that are replaced by a single placeholder frame, may be null
+	 */
+	public ValgrindParserOptions( boolean countersOnly, int maxErrorsPerKind, int maxFramesPerStack, int maxAuxiliaryPerError,
+			List<String> hiddenFramePatterns )
+	{
+		this.countersOnly = countersOnly;
+		this.maxErrorsPerKind = maxErrorsPerKind;
+		this.maxFramesPerStack = maxFramesPerStack;
+		this.maxAuxiliaryPerError = maxAuxiliaryPerError;
+
+		if ( hiddenFramePatterns == null || hiddenFramePatterns.isEmpty() )
+			this.hiddenFramePatterns = null;
+		else
+			this.hiddenFramePatterns = new ArrayList<String>( hiddenFramePatterns );
+	}
+
+	public boolean isCountersOnly()
+	{
+		return countersOnly;
+	}
+
+	public int getMaxErrorsPerKind()
+	{
+		return maxErrorsPerKind;
+	}
+
+	public int getMaxFramesPerStack()
+	{
+		return maxFramesPerStack;
+	}
+
+	public int getMaxAuxiliaryPerError()
+	{
+		return maxAuxiliaryPerError;
+	}
+
+	public List<String> getHiddenFramePatterns()
+	{
+		if ( hiddenFramePatterns == null )
+			return Collections.emptyList();
+
+		return Collections.unmodifiableList( hiddenFramePatterns );
+	}
+
+	/**
+	 * @return true if the object or the source file of the given frame,
+	 *         either the full path or only its name, matches one of the hidden
+	 *         frame patterns
+	 */
+	public boolean isHidden( ValgrindStacktraceFrame frame )
+	{
+		if ( hiddenFramePatterns == null )
+			return false;
+
+		for ( String pattern : hiddenFramePatterns )
+		{
+			if ( matches( pattern, frame.getObjectName() ) || matches( pattern, frame.getFilePath() ) )
+				return true;
+		}
+
+		return false;
+	}
+
+	private static boolean matches( String pattern, String path )
+	{
+		if ( path == null )
+			return false;
+
+		if ( SelectorUtils.match( pattern, path ) )
+			return true;
+
+		int slash = path.lastIndexOf( '/' );
+		return slash >= 0 && SelectorUtils.match( pattern, path.substring( slash + 1 ) );
+	}
+}
@@ -6,6 +6,13 @@ import hudson.remoting.VirtualChannel;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.types.FileSet;
@@ -17,47 +24,171 @@ import org.jenkinsci.remoting.RoleChecker;
 public class ValgrindParserResult implements FilePath.FileCallable<ValgrindReport>
 {
 	private static final long serialVersionUID = -5475538646374717099L;
+	
+	/**
+	 * Upper bound for the number of files parsed at the same time, defaults to
+	 * the number of processors of the machine doing the parsing.
+	 */
+	private static final int MAX_THREADS = Integer.getInteger(ValgrindParserResult.class.getName() + ".maxThreads",
+			Runtime.getRuntime().availableProcessors());
+	
 	private String pattern;
+	private ValgrindParserEngine engine;
+	private ValgrindParserOptions options;
+	private boolean snapshots;
 	
 	public ValgrindParserResult( String pattern )
+	{
+		this( pattern, ValgrindParserEngine.DEFAULT );
+	}
+	
+	public ValgrindParserResult( String pattern, ValgrindParserEngine engine )
+	{
+		this( pattern, engine, ValgrindParserOptions.DEFAULT );
+	}
+	
+	public ValgrindParserResult( String pattern, ValgrindParserEngine engine, ValgrindParserOptions options )
 	{
 		this.pattern = pattern;
+		this.engine = engine;
+		this.options = options;
+	}
+	
+	/**
+	 * @param pattern
+	 *            matches snapshots the controller wrote itself into the build
+	 *            directory, never files from a workspace
+	 * @return a parser reading {@link ValgrindReportSnapshot}s instead of xml
+	 *         files
+	 */
+	public static ValgrindParserResult forSnapshots( String pattern )
+	{
+		ValgrindParserResult result = new ValgrindParserResult( pattern );
+		result.snapshots = true;
+		return result;
+	}
+	
+	public ValgrindParserEngine getEngine()
+	{
+		//results recorded before the engine was configurable don't have one
+		if ( engine == null )
+			return ValgrindParserEngine.DEFAULT;
+		
+		return engine;
+	}
+	
+	public ValgrindParserOptions getOptions()
+	{
+		if ( options == null )
+			return ValgrindParserOptions.DEFAULT;
+		
+		return options;
 	}
 
 	public ValgrindReport invoke(File basedir, VirtualChannel channel) throws IOException, InterruptedException
 	{
 		ValgrindLogger.logFine("looking for valgrind files in '" + basedir.getAbsolutePath() + "' with pattern '" + pattern + "'");
 		
-		ValgrindReport valgrindReport = new ValgrindReport();
+		final ValgrindReport valgrindReport = new ValgrindReport();
+		final ValgrindReportParser parser = snapshots ? null : getEngine().createParser( getOptions() );
+		final String[] fileNames = findValgrindsReports( basedir );
 		
-		for ( String fileName : findValgrindsReports( basedir ) )
+		//sorted, so that processes are always merged in the same order
+		Arrays.sort( fileNames );
+		
+		int threads = Math.min( MAX_THREADS, fileNames.length );
+		if ( threads <= 1 )
 		{
-			ValgrindLogger.logFine("parsing " + fileName + "...");
-			try
+			for ( String fileName : fileNames )
 			{
-				ValgrindReport report = new ValgrindSaxParser().parse( new File(basedir, fileName) );
-				if(report != null && report.isValid())
+				try
+				{
+					integrate( valgrindReport, fileName, parse( parser, basedir, fileName ) );
+				}
+				catch (RuntimeException e)
 				{
-					valgrindReport.integrate( report );										
+					throw e;
 				}
-				else
+				catch (Exception e)
 				{
-					valgrindReport.addParserError(fileName, "no valid data");					
+					valgrindReport.addParserError(fileName, e.getMessage());
 				}
 			}
-                        catch (RuntimeException e)
-                        {
-                                throw e;
-                        }
-			catch (Exception e)
+			
+			valgrindReport.setupProcessTree();
+			return valgrindReport;
+		}
+		
+		List<Callable<ValgrindReport>> tasks = new ArrayList<Callable<ValgrindReport>>(fileNames.length);
+		for ( final String fileName : fileNames )
+		{
+			final File dir = basedir;
+			tasks.add( new Callable<ValgrindReport>()
 			{
-				valgrindReport.addParserError(fileName, e.getMessage());
+				public ValgrindReport call() throws Exception
+				{
+					return parse( parser, dir, fileName );
+				}
+			});
+		}
+		
+		ForkJoinPool pool = new ForkJoinPool( threads );
+		try
+		{
+			List<Future<ValgrindReport>> results = pool.invokeAll( tasks );
+			
+			for ( int i = 0; i < fileNames.length; ++i )
+			{
+				try
+				{
+					integrate( valgrindReport, fileNames[i], results.get(i).get() );
+				}
+				catch (ExecutionException e)
+				{
+					Throwable cause = e.getCause();
+					
+					if ( cause instanceof RuntimeException )
+						throw (RuntimeException) cause;
+					if ( cause instanceof Error )
+						throw (Error) cause;
+					
+					valgrindReport.addParserError(fileNames[i], cause.getMessage());
+				}
 			}
 		}
+		finally
+		{
+			pool.shutdownNow();
+		}
 
+		valgrindReport.setupProcessTree();
 		return valgrindReport;
 	}
 	
+	private static ValgrindReport parse( ValgrindReportParser parser, File basedir, String fileName ) throws Exception
+	{
+		ValgrindLogger.logFine("parsing " + fileName + "...");
+		
+		File file = new File(basedir, fileName);
+		
+		if ( parser == null )
+			return ValgrindReportSnapshot.read( file );
+		
+		return parser.parse( file );
+	}
+	
+	private static void integrate( ValgrindReport valgrindReport, String fileName, ValgrindReport report )
+	{
+		if(report != null && report.isValid())
+		{
+			valgrindReport.integrate( report );										
+		}
+		else
+		{
+			valgrindReport.addParserError(fileName, "no valid data");					
+		}
+	}
+	
 	private String[] findValgrindsReports(File parentPath)
 	{
 		FileSet fs = Util.createFileSet(parentPath, this.pattern);
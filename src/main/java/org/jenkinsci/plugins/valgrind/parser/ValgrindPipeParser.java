@@ -0,0 +1,191 @@
+package org.jenkinsci.plugins.valgrind.parser;
+
+import hudson.FilePath;
+import hudson.remoting.VirtualChannel;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
+import org.jenkinsci.remoting.RoleChecker;
+
+/**
+ * Parses the xml valgrind writes into a named pipe while valgrind is running,
+ * so that the xml is never written to disk. The parsed report is returned to
+ * the controller through the channel's class filter, which stores it with the
+ * build for the publisher.
+ *
+ * Invoked on the pipe itself. The parser holds the pipe open for writing
+ * itself, so it never blocks waiting for valgrind to open the pipe, and only
+ * sees the end of the input once the pipe was released, see {@link Release},
+ * or removed. The pipe has to be released after valgrind has finished, also
+ * if valgrind never opened it.
+ */
+public class ValgrindPipeParser implements FilePath.FileCallable<ValgrindReport>
+{
+	private static final long serialVersionUID = -6610578457722419745L;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Interval in milliseconds of checking whether the pipe was released.
+	 */
+	private static final long RELEASE_POLL_INTERVAL = 100;
+
+	private static final String RELEASED_SUFFIX = ".released";
+
+	private final ValgrindParserEngine engine;
+	private final ValgrindParserOptions options;
+
+	/**
+	 * @param options
+	 *            what is kept of the report, like the publisher would when
+	 *            parsing the xml file
+	 */
+	public ValgrindPipeParser( ValgrindParserEngine engine, ValgrindParserOptions options )
+	{
+		this.engine = engine;
+		this.options = options != null ? options : ValgrindParserOptions.DEFAULT;
+	}
+
+	/**
+	 * @return the report, null if valgrind didn't write a valid report
+	 */
+	public ValgrindReport invoke( final File pipe, VirtualChannel channel ) throws IOException, InterruptedException
+	{
+		ValgrindReport report;
+
+		// opening a pipe for reading and writing never blocks on linux, with a writer opening it for reading doesn't either
+		final RandomAccessFile writer = new RandomAccessFile( pipe, "rw" );
+		InputStream is;
+		try
+		{
+			is = new BufferedInputStream( new FileInputStream( pipe ), BUFFER_SIZE );
+		}
+		catch ( IOException e )
+		{
+			close( writer );
+			throw e;
+		}
+
+		final File released = getReleasedFile( pipe );
+		Thread watcher = new Thread( "valgrind pipe " + pipe )
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					while ( pipe.exists() && !released.exists() )
+						Thread.sleep( RELEASE_POLL_INTERVAL );
+				}
+				catch ( InterruptedException e )
+				{
+					// the parser has finished
+				}
+				finally
+				{
+					close( writer );
+				}
+			}
+		};
+		watcher.setDaemon( true );
+		watcher.start();
+
+		try
+		{
+			try
+			{
+				report = engine.createParser( options ).parse( is );
+			}
+			catch ( IOException e )
+			{
+				throw e;
+			}
+			catch ( Exception e )
+			{
+				throw new IOException( e );
+			}
+			finally
+			{
+				// valgrind would block on a full pipe if the parser stopped early
+				drain( is );
+				is.close();
+			}
+		}
+		finally
+		{
+			watcher.interrupt();
+		}
+
+		if ( report == null || !report.isValid() || report.getProcesses() == null || report.getProcesses().isEmpty() )
+			return null;
+
+		return report;
+	}
+
+	private static void drain( InputStream is )
+	{
+		try
+		{
+			byte[] buffer = new byte[BUFFER_SIZE];
+			while ( is.read( buffer ) >= 0 )
+			{
+			}
+		}
+		catch ( IOException e )
+		{
+			// nothing left to read
+		}
+	}
+
+	private static File getReleasedFile( File pipe )
+	{
+		return new File( pipe.getPath() + RELEASED_SUFFIX );
+	}
+
+	private static void close( RandomAccessFile file )
+	{
+		try
+		{
+			file.close();
+		}
+		catch ( IOException e )
+		{
+			// nothing was written
+		}
+	}
+
+	@Override
+	public void checkRoles( RoleChecker roleChecker ) throws SecurityException
+	{
+	}
+
+	/**
+	 * Marks the pipe as released next to it, the parser then reads what
+	 * valgrind left in the pipe and finishes, even if it opens the pipe only
+	 * afterwards.
+	 */
+	public static class Release implements FilePath.FileCallable<Void>
+	{
+		private static final long serialVersionUID = 2215868893419740186L;
+
+		public Void invoke( File pipe, VirtualChannel channel ) throws IOException, InterruptedException
+		{
+			File released = getReleasedFile( pipe );
+			if ( !released.createNewFile() && !released.exists() )
+				throw new IOException( "failed to create '" + released.getAbsolutePath() + "'" );
+
+			return null;
+		}
+
+		@Override
+		public void checkRoles( RoleChecker roleChecker ) throws SecurityException
+		{
+		}
+	}
+}
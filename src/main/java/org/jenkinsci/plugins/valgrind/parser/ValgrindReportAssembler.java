@@ -0,0 +1,585 @@
+package org.jenkinsci.plugins.valgrind.parser;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.jenkinsci.plugins.valgrind.model.ValgrindAuxiliary;
+import org.jenkinsci.plugins.valgrind.model.ValgrindCounters;
+import org.jenkinsci.plugins.valgrind.model.ValgrindError;
+import org.jenkinsci.plugins.valgrind.model.ValgrindErrorKind;
+import org.jenkinsci.plugins.valgrind.model.ValgrindProcess;
+import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
+import org.jenkinsci.plugins.valgrind.model.ValgrindStacktrace;
+import org.jenkinsci.plugins.valgrind.model.ValgrindStacktraceFrame;
+import org.jenkinsci.plugins.valgrind.model.ValgrindThread;
+import org.jenkinsci.plugins.valgrind.util.ValgrindLogger;
+
+/**
+ * Builds a {@link ValgrindReport} from the element events of a valgrind xml
+ * file. Elements are identified by a table driven state machine: the id of an
+ * element is looked up from the id of its parent and its name, so no element
+ * path has to be assembled or compared.
+ *
+ * The details of errors that are not kept, because of counters only mode or
+ * because the limit of errors of their kind is reached, are treated as
+ * unknown elements, these errors are only counted per process and kind. Frames
+ * and auxiliary descriptions beyond their limits are skipped the same way.
+ */
+class ValgrindReportAssembler
+{
+	static final int UNKNOWN = 0;
+	static final int DOCUMENT = 1;
+	static final int OUTPUT = 2;
+	static final int PID = 3;
+	static final int PPID = 4;
+	static final int ARGS = 5;
+	static final int ARGV = 6;
+	static final int ARGV_EXE = 7;
+	static final int ARGV_ARG = 8;
+	static final int VARGV = 9;
+	static final int VARGV_ARG = 10;
+	static final int THREAD = 11;
+	static final int THREAD_HTHREADID = 12;
+	static final int THREAD_ISROOTTHREAD = 13;
+	static final int THREAD_STACK = 14;
+	static final int ERROR = 15;
+	static final int ERROR_UNIQUE = 16;
+	static final int ERROR_KIND = 17;
+	static final int ERROR_WHAT = 18;
+	static final int ERROR_XWHAT = 19;
+	static final int ERROR_XWHAT_TEXT = 20;
+	static final int ERROR_XWHAT_LEAKEDBYTES = 21;
+	static final int ERROR_XWHAT_LEAKEDBLOCKS = 22;
+	static final int ERROR_AUXWHAT = 23;
+	static final int ERROR_XAUXWHAT = 24;
+	static final int ERROR_XAUXWHAT_TEXT = 25;
+	static final int ERROR_STACK = 26;
+	static final int ERROR_SUPPRESSION = 27;
+	static final int ERROR_SUPPRESSION_RAWTEXT = 28;
+	static final int FRAME = 29;
+	static final int FRAME_OBJ = 30;
+	static final int FRAME_FN = 31;
+	static final int FRAME_DIR = 32;
+	static final int FRAME_FILE = 33;
+	static final int FRAME_LINE = 34;
+
+	private static final int ELEMENT_COUNT = 35;
+
+	@SuppressWarnings("unchecked")
+	private static final Map<String, Integer>[] CHILDREN = new Map[ELEMENT_COUNT];
+	private static final boolean[] TEXT = new boolean[ELEMENT_COUNT];
+	private static final boolean[] DETAIL = new boolean[ELEMENT_COUNT];
+
+	static
+	{
+		child(DOCUMENT, "valgrindoutput", OUTPUT);
+
+		child(OUTPUT, "pid", PID);
+		child(OUTPUT, "ppid", PPID);
+		child(OUTPUT, "args", ARGS);
+		child(OUTPUT, "announcethread", THREAD);
+		child(OUTPUT, "error", ERROR);
+
+		child(ARGS, "argv", ARGV);
+		child(ARGS, "vargv", VARGV);
+		child(ARGV, "exe", ARGV_EXE);
+		child(ARGV, "arg", ARGV_ARG);
+		child(VARGV, "arg", VARGV_ARG);
+
+		child(THREAD, "hthreadid", THREAD_HTHREADID);
+		child(THREAD, "isrootthread", THREAD_ISROOTTHREAD);
+		child(THREAD, "stack", THREAD_STACK);
+		child(THREAD_STACK, "frame", FRAME);
+
+		child(ERROR, "unique", ERROR_UNIQUE);
+		child(ERROR, "kind", ERROR_KIND);
+		child(ERROR, "what", ERROR_WHAT);
+		child(ERROR, "xwhat", ERROR_XWHAT);
+		child(ERROR, "auxwhat", ERROR_AUXWHAT);
+		child(ERROR, "xauxwhat", ERROR_XAUXWHAT);
+		child(ERROR, "stack", ERROR_STACK);
+		child(ERROR, "suppression", ERROR_SUPPRESSION);
+		child(ERROR_XWHAT, "text", ERROR_XWHAT_TEXT);
+		child(ERROR_XWHAT, "leakedbytes", ERROR_XWHAT_LEAKEDBYTES);
+		child(ERROR_XWHAT, "leakedblocks", ERROR_XWHAT_LEAKEDBLOCKS);
+		child(ERROR_XAUXWHAT, "text", ERROR_XAUXWHAT_TEXT);
+		child(ERROR_SUPPRESSION, "rawtext", ERROR_SUPPRESSION_RAWTEXT);
+		child(ERROR_STACK, "frame", FRAME);
+
+		child(FRAME, "obj", FRAME_OBJ);
+		child(FRAME, "fn", FRAME_FN);
+		child(FRAME, "dir", FRAME_DIR);
+		child(FRAME, "file", FRAME_FILE);
+		child(FRAME, "line", FRAME_LINE);
+
+		for ( int id : new int[] { PID, PPID, ARGV_EXE, ARGV_ARG, VARGV_ARG, THREAD_HTHREADID,
+				ERROR_UNIQUE, ERROR_KIND, ERROR_WHAT, ERROR_XWHAT_TEXT, ERROR_XWHAT_LEAKEDBYTES,
+				ERROR_XWHAT_LEAKEDBLOCKS, ERROR_AUXWHAT, ERROR_XAUXWHAT_TEXT, ERROR_SUPPRESSION_RAWTEXT,
+				FRAME_OBJ, FRAME_FN, FRAME_DIR, FRAME_FILE, FRAME_LINE } )
+			TEXT[id] = true;
+
+		for ( int id : new int[] { ERROR_UNIQUE, ERROR_WHAT, ERROR_XWHAT_TEXT, ERROR_AUXWHAT,
+				ERROR_XAUXWHAT, ERROR_STACK, ERROR_SUPPRESSION } )
+			DETAIL[id] = true;
+	}
+
+	private static void child( int parent, String name, int id )
+	{
+		if ( CHILDREN[parent] == null )
+			CHILDREN[parent] = new HashMap<String, Integer>();
+
+		CHILDREN[parent].put( name, id );
+	}
+
+	/**
+	 * @return the id of the element with the given name below the given
+	 *         parent, {@link #UNKNOWN} for elements that are not evaluated
+	 */
+	static int lookup( int parent, String name )
+	{
+		Map<String, Integer> children = CHILDREN[parent];
+		if ( children == null )
+			return UNKNOWN;
+
+		Integer id = children.get( name );
+		if ( id == null )
+		{
+			// element names used to be compared case insensitive
+			id = children.get( name.toLowerCase( Locale.ENGLISH ) );
+			if ( id == null )
+				return UNKNOWN;
+		}
+
+		return id.intValue();
+	}
+
+	private ValgrindReport currentReport;
+	private ValgrindProcess currentProcess;
+	private ValgrindThread currentThread;
+	private ValgrindError currentError;
+	private ValgrindStacktrace currentStacktrace;
+	private ValgrindStacktraceFrame currentStacktraceFrame;
+	private ValgrindAuxiliary currentAuxiliary;
+	private String currentText = "";
+	private ValgrindCounters.Builder omittedErrors;
+	private final int[] keptErrors = new int[ValgrindErrorKind.values().length];
+	private boolean omittingError = false;
+	private int auxiliaryCount = 0;
+	private boolean skippingAuxiliary = false;
+
+	private int[] stack = new int[16];
+	private int depth = 0;
+	private final StringBuilder data = new StringBuilder();
+	private boolean capturing = false;
+
+	private final ValgrindParserOptions options;
+
+	ValgrindReportAssembler()
+	{
+		this( ValgrindParserOptions.DEFAULT );
+	}
+
+	ValgrindReportAssembler( ValgrindParserOptions options )
+	{
+		this.options = options;
+		stack[0] = DOCUMENT;
+	}
+
+	/**
+	 * @return the id of the current element
+	 */
+	int current()
+	{
+		return stack[depth];
+	}
+
+	/**
+	 * @return the id of the element with the given name below the current
+	 *         element, {@link #UNKNOWN} for elements that are not evaluated
+	 *         with the options of this assembler
+	 */
+	int lookup( String name )
+	{
+		int id = lookup( stack[depth], name );
+
+		if ( omittingError && DETAIL[id] )
+			return UNKNOWN;
+
+		switch ( id )
+		{
+		case THREAD_STACK:
+			if ( options.isCountersOnly() )
+				return UNKNOWN;
+			break;
+
+		case FRAME:
+			if ( options.getMaxFramesPerStack() > 0 && currentStacktrace != null
+					&& currentStacktrace.size() >= options.getMaxFramesPerStack() )
+				return UNKNOWN;
+			break;
+
+		case ERROR_AUXWHAT:
+		case ERROR_XAUXWHAT:
+			if ( options.getMaxAuxiliaryPerError() > 0 && auxiliaryCount >= options.getMaxAuxiliaryPerError() )
+			{
+				// the stacks following a skipped description belong to it
+				skippingAuxiliary = true;
+				return UNKNOWN;
+			}
+			break;
+
+		case ERROR_STACK:
+			if ( skippingAuxiliary )
+				return UNKNOWN;
+			break;
+
+		default:
+			break;
+		}
+
+		return id;
+	}
+
+	/**
+	 * Enters an element.
+	 *
+	 * @return the id of the element
+	 */
+	int startElement( String name )
+	{
+		int id = lookup( name );
+
+		if ( ++depth == stack.length )
+		{
+			int[] grown = new int[stack.length * 2];
+			System.arraycopy( stack, 0, grown, 0, stack.length );
+			stack = grown;
+		}
+
+		stack[depth] = id;
+		start( id );
+
+		return id;
+	}
+
+	boolean isCapturing()
+	{
+		return capturing;
+	}
+
+	void characters( char[] ch, int start, int length )
+	{
+		if ( capturing )
+			data.append( ch, start, length );
+	}
+
+	void endElement()
+	{
+		if ( depth == 0 )
+			return;
+
+		end( stack[depth] );
+		capturing = false;
+		depth--;
+	}
+
+	ValgrindReport getReport()
+	{
+		// the closing tag is missing in incomplete reports
+		flushOmittedErrors();
+
+		return currentReport;
+	}
+
+	/**
+	 * Consecutive hidden frames share one placeholder frame.
+	 */
+	private void addHiddenFrame()
+	{
+		List<ValgrindStacktraceFrame> frames = currentStacktrace.getFrames();
+		if ( frames != null && !frames.isEmpty() && frames.get( frames.size() - 1 ).isHidden() )
+		{
+			frames.get( frames.size() - 1 ).addHiddenFrame();
+			return;
+		}
+
+		ValgrindStacktraceFrame placeholder = new ValgrindStacktraceFrame();
+		placeholder.addHiddenFrame();
+		currentStacktrace.addFrame( placeholder );
+	}
+
+	private void flushOmittedErrors()
+	{
+		if ( omittedErrors != null && currentProcess != null )
+			currentProcess.setOmittedErrors( omittedErrors.build() );
+	}
+
+	private void start( int id )
+	{
+		if ( TEXT[id] )
+		{
+			data.setLength( 0 );
+			capturing = true;
+		}
+
+		switch ( id )
+		{
+		case OUTPUT:
+			currentReport = new ValgrindReport();
+			currentProcess = new ValgrindProcess();
+			currentReport.addProcess( currentProcess );
+			omittedErrors = null;
+			Arrays.fill( keptErrors, 0 );
+			break;
+
+		case THREAD:
+			currentThread = new ValgrindThread();
+			break;
+
+		case THREAD_ISROOTTHREAD:
+			if ( currentThread != null )
+				currentThread.setRootThread( true );
+			break;
+
+		case THREAD_STACK:
+		case ERROR_STACK:
+			currentStacktrace = new ValgrindStacktrace();
+			break;
+
+		case ERROR:
+			currentError = new ValgrindError();
+			omittingError = options.isCountersOnly();
+			auxiliaryCount = 0;
+			skippingAuxiliary = false;
+			break;
+
+		case FRAME:
+			if ( currentStacktrace != null )
+				currentStacktraceFrame = new ValgrindStacktraceFrame();
+			break;
+
+		default:
+			break;
+		}
+	}
+
+	private void end( int id )
+	{
+		switch ( id )
+		{
+		case OUTPUT:
+			flushOmittedErrors();
+			break;
+
+		case THREAD:
+			if ( currentProcess != null )
+			{
+				currentProcess.addThread( currentThread );
+				currentThread = null;
+			}
+			break;
+
+		case THREAD_HTHREADID:
+			if ( currentThread != null )
+				currentThread.setHthreadid( data.toString() );
+			break;
+
+		case THREAD_STACK:
+			if ( currentThread != null )
+			{
+				if ( currentThread.getStacktrace() == null )
+					currentThread.setStacktrace( currentStacktrace );
+
+				currentStacktrace = null;
+			}
+			break;
+
+		case ERROR:
+			if ( currentAuxiliary != null )
+				currentError.addAuxiliaryData( currentAuxiliary );
+
+			if ( currentError.getKind() != null && currentProcess != null )
+			{
+				if ( omittingError )
+				{
+					if ( omittedErrors == null )
+						omittedErrors = new ValgrindCounters.Builder();
+
+					omittedErrors.addError( currentError );
+				}
+				else
+				{
+					currentProcess.addError( currentError );
+					keptErrors[currentError.getKind().ordinal()]++;
+				}
+			}
+
+			currentError = null;
+			currentAuxiliary = null;
+			omittingError = false;
+			skippingAuxiliary = false;
+			break;
+
+		case ERROR_UNIQUE:
+			currentError.setUniqueId( data.toString() );
+			break;
+
+		case PID:
+			if ( currentProcess != null )
+				currentProcess.setPid( data.toString() );
+			break;
+
+		case PPID:
+			if ( currentProcess != null )
+				currentProcess.setPpid( data.toString() );
+			break;
+
+		case ERROR_KIND:
+			try
+			{
+				currentError.setKind( ValgrindErrorKind.valueOf( data.toString() ) );
+
+				if ( options.getMaxErrorsPerKind() > 0
+						&& keptErrors[currentError.getKind().ordinal()] >= options.getMaxErrorsPerKind() )
+					omittingError = true;
+			}
+			catch( IllegalArgumentException e )
+			{
+				ValgrindLogger.logWarn( "Valgrind error not supported: " + data.toString() );
+			}
+			break;
+
+		case ERROR_WHAT:
+		case ERROR_XWHAT_TEXT:
+			currentError.setDescription( data.toString() );
+			break;
+
+		case ERROR_AUXWHAT:
+			if ( currentAuxiliary != null )
+				currentError.addAuxiliaryData( currentAuxiliary );
+
+			currentAuxiliary = new ValgrindAuxiliary();
+			currentAuxiliary.setDescription( data.toString() );
+			auxiliaryCount++;
+			break;
+
+		case ERROR_XAUXWHAT_TEXT:
+			currentText = data.toString();
+			break;
+
+		case ERROR_XAUXWHAT:
+			if ( currentAuxiliary != null )
+				currentError.addAuxiliaryData( currentAuxiliary );
+
+			currentAuxiliary = new ValgrindAuxiliary();
+			currentAuxiliary.setDescription( currentText );
+			auxiliaryCount++;
+			break;
+
+		case ARGV_EXE:
+			if ( currentProcess != null )
+				currentProcess.setExecutable( data.toString() );
+			break;
+
+		case ARGV_ARG:
+			if ( currentProcess != null )
+				currentProcess.addArgument( data.toString() );
+			break;
+
+		case VARGV_ARG:
+			if ( currentProcess != null )
+				currentProcess.addValgrindArgument( data.toString() );
+			break;
+
+		case ERROR_XWHAT_LEAKEDBYTES:
+			try
+			{
+				currentError.setLeakedBytes( Integer.valueOf( data.toString() ) );
+			}
+			catch( NumberFormatException e )
+			{
+				ValgrindLogger.logWarn( "'" + data.toString() + "' is not a valid number of leaked bytes" );
+			}
+			break;
+
+		case ERROR_XWHAT_LEAKEDBLOCKS:
+			try
+			{
+				currentError.setLeakedBlocks( Integer.valueOf( data.toString() ) );
+			}
+			catch( NumberFormatException e )
+			{
+				ValgrindLogger.logWarn( "'" + data.toString() + "' is not a valid number of leaked blocks" );
+			}
+			break;
+
+		case ERROR_STACK:
+			if ( currentStacktrace != null )
+			{
+				if ( currentAuxiliary != null )
+					currentAuxiliary.setStacktrace( currentStacktrace );
+				else if ( currentError.getStacktrace() == null )
+					currentError.setStacktrace( currentStacktrace );
+
+				currentStacktrace = null;
+			}
+			break;
+
+		case FRAME:
+			if ( currentStacktraceFrame != null )
+			{
+				if ( options.isHidden( currentStacktraceFrame ) )
+					addHiddenFrame();
+				else
+					currentStacktrace.addFrame( currentStacktraceFrame );
+
+				currentStacktraceFrame = null;
+			}
+			break;
+
+		case FRAME_OBJ:
+			if ( currentStacktraceFrame != null )
+				currentStacktraceFrame.setObjectName( data.toString() );
+			break;
+
+		case FRAME_FN:
+			if ( currentStacktraceFrame != null )
+				currentStacktraceFrame.setFunctionName( data.toString() );
+			break;
+
+		case FRAME_DIR:
+			if ( currentStacktraceFrame != null )
+				currentStacktraceFrame.setDirectoryName( data.toString() );
+			break;
+
+		case FRAME_FILE:
+			if ( currentStacktraceFrame != null )
+				currentStacktraceFrame.setFileName( data.toString() );
+			break;
+
+		case FRAME_LINE:
+			if ( currentStacktraceFrame != null )
+			{
+				try
+				{
+					currentStacktraceFrame.setLineNumber( Integer.valueOf( data.toString() ) );
+				}
+				catch( NumberFormatException e )
+				{
+				}
+			}
+			break;
+
+		case ERROR_SUPPRESSION_RAWTEXT:
+			if ( currentError != null )
+				currentError.setSuppression( data.toString().trim() );
+			break;
+
+		default:
+			break;
+		}
+	}
+}
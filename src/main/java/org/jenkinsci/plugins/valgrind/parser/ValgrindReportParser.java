@@ -0,0 +1,21 @@
+package org.jenkinsci.plugins.valgrind.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
+import org.xml.sax.SAXException;
+
+/**
+ * Parses a single valgrind xml file. Incomplete files, e.g. of a valgrind run
+ * that was killed, are read as far as possible.
+ */
+public interface ValgrindReportParser
+{
+	ValgrindReport parse( final File file ) throws ParserConfigurationException, SAXException, IOException;
+
+	ValgrindReport parse( final InputStream is ) throws ParserConfigurationException, SAXException, IOException;
+}
@@ -0,0 +1,229 @@
+package org.jenkinsci.plugins.valgrind.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
+
+/**
+ * Compact binary image of a parsed {@link ValgrindReport}, written once when
+ * the results are published so that later page views don't have to parse the
+ * valgrind xml files again.
+ */
+public abstract class ValgrindReportSnapshot
+{
+	public static final String FILE_NAME = "valgrind-plugin/valgrind-report.ser.gz";
+
+	private static final int MAGIC = 0x56475250; // "VGRP"
+	private static final int FORMAT_VERSION = 1;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Limits for reading a snapshot, far above what a report needs, e.g. the
+	 * process tree is not serialized.
+	 */
+	private static final String FILTER = "maxdepth=64;maxarray=16777216;maxrefs=67108864";
+
+	private static final String MODEL_PACKAGE = "org.jenkinsci.plugins.valgrind.model.";
+
+	/**
+	 * Classes besides the model a report consists of.
+	 */
+	private static final Set<String> ALLOWED_CLASSES = new HashSet<String>(Arrays.asList(
+			"java.lang.Boolean",
+			"java.lang.Enum",
+			"java.lang.Integer",
+			"java.lang.Long",
+			"java.lang.Number",
+			"java.lang.String",
+			"java.util.ArrayList",
+			"java.util.Collections$EmptyList",
+			"java.util.Collections$EmptyMap",
+			"java.util.Collections$EmptySet",
+			"java.util.Collections$UnmodifiableCollection",
+			"java.util.Collections$UnmodifiableList",
+			"java.util.Collections$UnmodifiableMap",
+			"java.util.Collections$UnmodifiableRandomAccessList",
+			"java.util.Collections$UnmodifiableSet",
+			"java.util.EnumMap",
+			"java.util.HashMap",
+			"java.util.HashSet",
+			"java.util.LinkedHashMap",
+			"java.util.LinkedHashSet",
+			"java.util.LinkedList",
+			"java.util.TreeMap",
+			"java.util.TreeSet"));
+
+	public static File getFile( File rootDir )
+	{
+		return new File( rootDir, FILE_NAME );
+	}
+
+	public static void write( File file, ValgrindReport report ) throws IOException
+	{
+		File parent = file.getParentFile();
+		// builds of several executables may store snapshots in the same directory at the same time
+		if ( parent != null && !parent.mkdirs() && !parent.isDirectory() )
+			throw new IOException("failed to create directory '" + parent.getAbsolutePath() + "'");
+
+		// write to a temporary file first, a reader must never see a half written snapshot
+		File tmp = new File( file.getPath() + ".tmp" );
+
+		OutputStream os = new FileOutputStream( tmp );
+		try
+		{
+			write( os, report );
+		}
+		finally
+		{
+			os.close();
+		}
+
+		if ( file.exists() && !file.delete() )
+			throw new IOException("failed to replace '" + file.getAbsolutePath() + "'");
+
+		if ( !tmp.renameTo( file ) )
+			throw new IOException("failed to rename '" + tmp.getAbsolutePath() + "' to '" + file.getAbsolutePath() + "'");
+	}
+
+	public static void write( OutputStream os, ValgrindReport report ) throws IOException
+	{
+		GZIPOutputStream gzip = new GZIPOutputStream( new BufferedOutputStream( os, BUFFER_SIZE ), BUFFER_SIZE );
+		ObjectOutputStream out = new ObjectOutputStream( gzip );
+
+		out.writeInt( MAGIC );
+		out.writeInt( FORMAT_VERSION );
+		out.writeObject( report );
+		out.flush();
+		gzip.finish();
+		gzip.flush();
+	}
+
+	/**
+	 * Reads a snapshot the controller wrote itself into a build directory,
+	 * files from a workspace must never be read as snapshot.
+	 */
+	public static ValgrindReport read( File file ) throws IOException
+	{
+		InputStream is = new FileInputStream( file );
+		try
+		{
+			return read( is );
+		}
+		finally
+		{
+			is.close();
+		}
+	}
+
+	public static ValgrindReport read( InputStream is ) throws IOException
+	{
+		ObjectInputStream in = new ReportInputStream( new GZIPInputStream( new BufferedInputStream( is, BUFFER_SIZE ), BUFFER_SIZE ) );
+		setFilter( in );
+
+		if ( in.readInt() != MAGIC )
+			throw new IOException("not a valgrind report snapshot");
+
+		int version = in.readInt();
+		if ( version != FORMAT_VERSION )
+			throw new IOException("unsupported valgrind report snapshot version " + version);
+
+		try
+		{
+			return (ValgrindReport) in.readObject();
+		}
+		catch ( ClassNotFoundException e )
+		{
+			throw new IOException("failed to read valgrind report snapshot: " + e.getMessage(), e);
+		}
+		catch ( ClassCastException e )
+		{
+			throw new IOException("failed to read valgrind report snapshot: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Applies the limits with the serialization filter of the JVM, available
+	 * since Java 9 and as backport since Java 8 update 121.
+	 */
+	private static void setFilter( ObjectInputStream in ) throws IOException
+	{
+		try
+		{
+			try
+			{
+				Class<?> filterClass = Class.forName( "java.io.ObjectInputFilter" );
+				Object filter = Class.forName( "java.io.ObjectInputFilter$Config" ).getMethod( "createFilter", String.class ).invoke( null, FILTER );
+				ObjectInputStream.class.getMethod( "setObjectInputFilter", filterClass ).invoke( in, filter );
+			}
+			catch ( ClassNotFoundException e )
+			{
+				Class<?> filterClass = Class.forName( "sun.misc.ObjectInputFilter" );
+				Class<?> config = Class.forName( "sun.misc.ObjectInputFilter$Config" );
+				Object filter = config.getMethod( "createFilter", String.class ).invoke( null, FILTER );
+				config.getMethod( "setObjectInputFilter", ObjectInputStream.class, filterClass ).invoke( null, in, filter );
+			}
+		}
+		catch ( ClassNotFoundException e )
+		{
+			throw new IOException( "valgrind report snapshots require Java 8 update 121 or later", e );
+		}
+		catch ( NoSuchMethodException e )
+		{
+			throw new IOException( "failed to limit reading valgrind report snapshot: " + e.getMessage(), e );
+		}
+		catch ( IllegalAccessException e )
+		{
+			throw new IOException( "failed to limit reading valgrind report snapshot: " + e.getMessage(), e );
+		}
+		catch ( InvocationTargetException e )
+		{
+			throw new IOException( "failed to limit reading valgrind report snapshot: " + e.getCause().getMessage(), e.getCause() );
+		}
+	}
+
+	/**
+	 * Only the classes of a report are resolved, nothing else can be
+	 * instantiated while reading a snapshot.
+	 */
+	private static class ReportInputStream extends ObjectInputStream
+	{
+		ReportInputStream( InputStream in ) throws IOException
+		{
+			super( in );
+		}
+
+		@Override
+		protected Class<?> resolveClass( ObjectStreamClass desc ) throws IOException, ClassNotFoundException
+		{
+			String name = desc.getName();
+
+			if ( !ALLOWED_CLASSES.contains( name ) && !( name.startsWith( MODEL_PACKAGE ) && name.indexOf( '.', MODEL_PACKAGE.length() ) < 0 ) )
+				throw new InvalidClassException( name, "not allowed in a valgrind report snapshot" );
+
+			return super.resolveClass( desc );
+		}
+
+		@Override
+		protected Class<?> resolveProxyClass( String[] interfaces ) throws IOException, ClassNotFoundException
+		{
+			throw new InvalidClassException( "proxy", "not allowed in a valgrind report snapshot" );
+		}
+	}
+}
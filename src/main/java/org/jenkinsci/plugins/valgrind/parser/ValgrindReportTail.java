@@ -0,0 +1,167 @@
+package org.jenkinsci.plugins.valgrind.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * The <code>&lt;errorcounts&gt;</code> and <code>&lt;suppcounts&gt;</code>
+ * elements valgrind writes at the end of a xml file when the process exits.
+ * Only the end of the file is mapped and scanned, so reading them takes the
+ * same time for small and huge files.
+ *
+ * Valgrind counts how often each reported error occurred, leak errors are not
+ * part of these counts.
+ */
+public class ValgrindReportTail
+{
+	private static final int INITIAL_WINDOW = 16 * 1024;
+	private static final int MAX_WINDOW = 16 * 1024 * 1024;
+
+	// only the ascii tags and numbers are evaluated
+	private static final Charset CHARSET = Charset.forName( "ISO-8859-1" );
+
+	private final int errorCount;
+	private final long occurrenceCount;
+	private final long suppressedCount;
+
+	ValgrindReportTail( int errorCount, long occurrenceCount, long suppressedCount )
+	{
+		this.errorCount = errorCount;
+		this.occurrenceCount = occurrenceCount;
+		this.suppressedCount = suppressedCount;
+	}
+
+	/**
+	 * @return the number of distinct errors valgrind reported
+	 */
+	public int getErrorCount()
+	{
+		return errorCount;
+	}
+
+	/**
+	 * @return how often the reported errors occurred in total
+	 */
+	public long getOccurrenceCount()
+	{
+		return occurrenceCount;
+	}
+
+	/**
+	 * @return how often errors matching a suppression occurred in total
+	 */
+	public long getSuppressedCount()
+	{
+		return suppressedCount;
+	}
+
+	/**
+	 * Reads the error counts from the end of the given file.
+	 *
+	 * @return the counts, or null if the file is incomplete or has no error
+	 *         counts
+	 */
+	public static ValgrindReportTail read( File file ) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile( file, "r" );
+		try
+		{
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			long window = Math.min( size, INITIAL_WINDOW );
+
+			while ( true )
+			{
+				MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, size - window, window );
+				byte[] bytes = new byte[(int) window];
+				buffer.get( bytes );
+
+				String tail = new String( bytes, CHARSET );
+
+				int end = tail.lastIndexOf( "</valgrindoutput>" );
+				if ( end < 0 )
+					return null;
+
+				int start = tail.lastIndexOf( "<errorcounts>", end );
+				if ( start >= 0 )
+					return parse( tail, start, end );
+
+				if ( window == size || window == MAX_WINDOW )
+					return null;
+
+				window = Math.min( size, Math.min( MAX_WINDOW, window * 2 ) );
+			}
+		}
+		finally
+		{
+			raf.close();
+		}
+	}
+
+	static ValgrindReportTail parse( String tail, int start, int end )
+	{
+		int errorsEnd = tail.indexOf( "</errorcounts>", start );
+		if ( errorsEnd < 0 || errorsEnd > end )
+			return null;
+
+		long[] errors = sumCounts( tail, start, errorsEnd );
+		if ( errors == null )
+			return null;
+
+		long[] suppressed = { 0, 0 };
+
+		int suppStart = tail.indexOf( "<suppcounts>", errorsEnd );
+		if ( suppStart >= 0 && suppStart < end )
+		{
+			int suppEnd = tail.indexOf( "</suppcounts>", suppStart );
+			if ( suppEnd < 0 || suppEnd > end )
+				return null;
+
+			suppressed = sumCounts( tail, suppStart, suppEnd );
+			if ( suppressed == null )
+				return null;
+		}
+
+		return new ValgrindReportTail( (int) errors[0], errors[1], suppressed[1] );
+	}
+
+	/**
+	 * @return the number of <code>&lt;count&gt;</code> elements and the sum of
+	 *         their values between the given positions, or null if a count is
+	 *         not a number
+	 */
+	private static long[] sumCounts( String s, int start, int end )
+	{
+		long[] result = { 0, 0 };
+
+		int pos = start;
+		while ( true )
+		{
+			int open = s.indexOf( "<count>", pos );
+			if ( open < 0 || open > end )
+				return result;
+
+			open += "<count>".length();
+
+			int close = s.indexOf( "</count>", open );
+			if ( close < 0 || close > end )
+				return null;
+
+			try
+			{
+				result[1] += Long.parseLong( s.substring( open, close ).trim() );
+			}
+			catch ( NumberFormatException e )
+			{
+				return null;
+			}
+
+			result[0]++;
+			pos = close;
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package org.jenkinsci.plugins.valgrind.parser;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
+import org.xml.sax.SAXException;
+
+/**
+ * Pull parser for valgrind xml files. Elements that are not evaluated, like
+ * the preamble, status and error counts or the suppression frames, are
+ * skipped as a whole without passing them to the assembler.
+ */
+public class ValgrindStaxParser implements ValgrindReportParser, Serializable
+{
+	private static final long serialVersionUID = 2136006416563254219L;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final ValgrindParserOptions options;
+
+	public ValgrindStaxParser()
+	{
+		this( ValgrindParserOptions.DEFAULT );
+	}
+
+	public ValgrindStaxParser( ValgrindParserOptions options )
+	{
+		this.options = options;
+	}
+
+	public ValgrindReport parse( final File file ) throws ParserConfigurationException, SAXException, IOException
+	{
+		InputStream is = new BufferedInputStream( new FileInputStream( file ), BUFFER_SIZE );
+		try
+		{
+			return parse( is );
+		}
+		finally
+		{
+			is.close();
+		}
+	}
+
+	public ValgrindReport parse( final InputStream is ) throws IOException
+	{
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty( XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE );
+		factory.setProperty( XMLInputFactory.IS_COALESCING, Boolean.FALSE );
+		factory.setProperty( XMLInputFactory.SUPPORT_DTD, Boolean.FALSE );
+		factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE );
+
+		ValgrindReportAssembler assembler = new ValgrindReportAssembler( options );
+
+		try
+		{
+			XMLStreamReader reader = factory.createXMLStreamReader( is );
+			try
+			{
+				read( reader, assembler );
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch ( XMLStreamException e )
+		{
+			/* We ignore parse exceptions. This is done to allow reading of
+			   incomplete Valgrind reports that don't have the closing
+			   </valgrindoutput> tag. */
+		}
+
+		return assembler.getReport();
+	}
+
+	private static void read( XMLStreamReader reader, ValgrindReportAssembler assembler ) throws XMLStreamException
+	{
+		while ( reader.hasNext() )
+		{
+			switch ( reader.next() )
+			{
+			case XMLStreamConstants.START_ELEMENT:
+				if ( assembler.lookup( reader.getLocalName() ) == ValgrindReportAssembler.UNKNOWN )
+					skipElement( reader );
+				else
+					assembler.startElement( reader.getLocalName() );
+				break;
+
+			case XMLStreamConstants.END_ELEMENT:
+				assembler.endElement();
+				break;
+
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				if ( assembler.isCapturing() )
+					assembler.characters( reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength() );
+				break;
+
+			default:
+				break;
+			}
+		}
+	}
+
+	private static void skipElement( XMLStreamReader reader ) throws XMLStreamException
+	{
+		int depth = 1;
+		while ( depth > 0 )
+		{
+			int event = reader.next();
+			if ( event == XMLStreamConstants.START_ELEMENT )
+				depth++;
+			else if ( event == XMLStreamConstants.END_ELEMENT )
+				depth--;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package org.jenkinsci.plugins.valgrind.parser;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.types.FileSet;
+import org.jenkinsci.plugins.valgrind.util.ValgrindLogger;
+import org.jenkinsci.remoting.RoleChecker;
+
+/**
+ * Sums up the error counts at the end of the valgrind xml files, see
+ * {@link ValgrindReportTail}. Only the ends of the files are read, files
+ * without error counts, e.g. of processes that were killed, are only
+ * counted, their errors are left to the full parse.
+ */
+public class ValgrindTailScanner implements FilePath.FileCallable<ValgrindTailScanner.Result>
+{
+	private static final long serialVersionUID = -1460226930612542370L;
+
+	private final String pattern;
+
+	public ValgrindTailScanner( String pattern )
+	{
+		this.pattern = pattern;
+	}
+
+	public Result invoke( File basedir, VirtualChannel channel ) throws IOException, InterruptedException
+	{
+		FileSet fs = Util.createFileSet( basedir, pattern );
+		DirectoryScanner ds = fs.getDirectoryScanner();
+
+		Result result = new Result();
+
+		for ( String fileName : ds.getIncludedFiles() )
+		{
+			File file = new File( basedir, fileName );
+
+			result.fileCount++;
+
+			ValgrindReportTail tail = ValgrindReportTail.read( file );
+
+			if ( tail == null )
+			{
+				ValgrindLogger.logFine( "no error counts at the end of " + fileName );
+				result.incompleteFileCount++;
+				continue;
+			}
+
+			result.errorCount += tail.getErrorCount();
+			result.occurrenceCount += tail.getOccurrenceCount();
+			result.suppressedCount += tail.getSuppressedCount();
+		}
+
+		return result;
+	}
+
+	@Override
+	public void checkRoles( RoleChecker roleChecker ) throws SecurityException
+	{
+	}
+
+	public static class Result implements Serializable
+	{
+		private static final long serialVersionUID = 4923087546911275314L;
+
+		private int fileCount;
+		private int incompleteFileCount;
+		private int errorCount;
+		private long occurrenceCount;
+		private long suppressedCount;
+
+		public int getFileCount()
+		{
+			return fileCount;
+		}
+
+		/**
+		 * @return the number of files that had no error counts
+		 */
+		public int getIncompleteFileCount()
+		{
+			return incompleteFileCount;
+		}
+
+		public int getErrorCount()
+		{
+			return errorCount;
+		}
+
+		/**
+		 * @return the occurrences according to the error counts that were
+		 *         found, files without error counts are not included
+		 */
+		public long getOccurrenceCount()
+		{
+			return occurrenceCount;
+		}
+
+		public long getSuppressedCount()
+		{
+			return suppressedCount;
+		}
+	}
+}
@@ -57,7 +57,17 @@ public class ValgrindBuilderStep extends AbstractStepImpl implements Serializabl
 			boolean childSilentAfterFork,
 			boolean generateSuppressions,
 			String  suppressionFiles,
-			boolean removeOldReports)
+			boolean removeOldReports,
+			String liveUpdateInterval,
+			boolean streamXml,
+			boolean failFast,
+			String concurrency,
+			String outputLimit,
+			String shardIndex,
+			String shardCount,
+			boolean reuseReports,
+			String timeLimit,
+			String cpuTimeLimit)
 	{
 		valgrindBuilderConfig = new ValgrindBuilderConfig(
 			valgrindExecutable.trim(),
@@ -74,7 +84,17 @@ public class ValgrindBuilderStep extends AbstractStepImpl implements Serializabl
 			childSilentAfterFork,
 			generateSuppressions,
 			suppressionFiles,
-			removeOldReports
+			removeOldReports,
+			liveUpdateInterval,
+			streamXml,
+			failFast,
+			concurrency,
+			outputLimit,
+			shardIndex,
+			shardCount,
+			reuseReports,
+			timeLimit,
+			cpuTimeLimit
 		);
 	}
 
@@ -191,4 +211,44 @@ public class ValgrindBuilderStep extends AbstractStepImpl implements Serializabl
 		return valgrindBuilderConfig.removeOldReports;
 	}
 
+	public String getLiveUpdateInterval() {
+		return valgrindBuilderConfig.liveUpdateInterval;
+	}
+
+	public boolean isStreamXml() {
+		return valgrindBuilderConfig.streamXml;
+	}
+
+	public boolean isFailFast() {
+		return valgrindBuilderConfig.failFast;
+	}
+
+	public String getConcurrency() {
+		return valgrindBuilderConfig.concurrency;
+	}
+
+	public String getOutputLimit() {
+		return valgrindBuilderConfig.outputLimit;
+	}
+
+	public String getShardIndex() {
+		return valgrindBuilderConfig.shardIndex;
+	}
+
+	public String getShardCount() {
+		return valgrindBuilderConfig.shardCount;
+	}
+
+	public boolean isReuseReports() {
+		return valgrindBuilderConfig.reuseReports;
+	}
+
+	public String getTimeLimit() {
+		return valgrindBuilderConfig.timeLimit;
+	}
+
+	public String getCpuTimeLimit() {
+		return valgrindBuilderConfig.cpuTimeLimit;
+	}
+
 }
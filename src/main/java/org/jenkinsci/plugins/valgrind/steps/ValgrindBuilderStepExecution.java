@@ -64,7 +64,17 @@ public class ValgrindBuilderStepExecution extends AbstractSynchronousNonBlocking
 				valgrindBuilderConfig.childSilentAfterFork,
 				valgrindBuilderConfig.generateSuppressions,
 				valgrindBuilderConfig.suppressionFiles,
-				valgrindBuilderConfig.removeOldReports
+				valgrindBuilderConfig.removeOldReports,
+				valgrindBuilderConfig.liveUpdateInterval,
+				valgrindBuilderConfig.streamXml,
+				valgrindBuilderConfig.failFast,
+				valgrindBuilderConfig.concurrency,
+				valgrindBuilderConfig.outputLimit,
+				valgrindBuilderConfig.shardIndex,
+				valgrindBuilderConfig.shardCount,
+				valgrindBuilderConfig.reuseReports,
+				valgrindBuilderConfig.timeLimit,
+				valgrindBuilderConfig.cpuTimeLimit
 			);
 		builder.perform(build, ws, launcher, listener);
         return null;
@@ -46,7 +46,14 @@ public class ValgrindPublisherStep extends AbstractStepImpl implements Serializa
     				boolean publishResultsForAbortedBuilds,
     				boolean publishResultsForFailedBuilds,
     				boolean failBuildOnMissingReports,
-    				boolean failBuildOnInvalidReports)
+    				boolean failBuildOnInvalidReports,
+    				boolean parseOnAgent,
+    				boolean discardRawReports,
+    				boolean countersOnly,
+    				String maxErrorsPerKind,
+    				String maxFramesPerStack,
+    				String maxAuxiliaryPerError,
+    				String hiddenFramePatterns)
 	{
 		valgrindPublisherConfig = new ValgrindPublisherConfig(
 				pattern,
@@ -60,7 +67,14 @@ public class ValgrindPublisherStep extends AbstractStepImpl implements Serializa
 				publishResultsForAbortedBuilds,
 				publishResultsForFailedBuilds,
 				failBuildOnMissingReports,
-				failBuildOnInvalidReports);
+				failBuildOnInvalidReports,
+				parseOnAgent,
+				discardRawReports,
+				countersOnly,
+				maxErrorsPerKind,
+				maxFramesPerStack,
+				maxAuxiliaryPerError,
+				hiddenFramePatterns);
 	}
 
     @Extension
@@ -150,4 +164,39 @@ public class ValgrindPublisherStep extends AbstractStepImpl implements Serializa
     {
         return valgrindPublisherConfig.isFailBuildOnInvalidReports();
     }
+
+    public boolean isParseOnAgent()
+    {
+        return valgrindPublisherConfig.isParseOnAgent();
+    }
+
+    public boolean isDiscardRawReports()
+    {
+        return valgrindPublisherConfig.isDiscardRawReports();
+    }
+
+    public boolean isCountersOnly()
+    {
+        return valgrindPublisherConfig.isCountersOnly();
+    }
+
+    public String getMaxErrorsPerKind()
+    {
+        return valgrindPublisherConfig.getMaxErrorsPerKind();
+    }
+
+    public String getMaxFramesPerStack()
+    {
+        return valgrindPublisherConfig.getMaxFramesPerStack();
+    }
+
+    public String getMaxAuxiliaryPerError()
+    {
+        return valgrindPublisherConfig.getMaxAuxiliaryPerError();
+    }
+
+    public String getHiddenFramePatterns()
+    {
+        return valgrindPublisherConfig.getHiddenFramePatterns();
+    }
 }
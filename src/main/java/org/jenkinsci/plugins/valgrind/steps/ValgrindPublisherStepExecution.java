@@ -59,7 +59,14 @@ public class ValgrindPublisherStepExecution extends AbstractSynchronousNonBlocki
 						valgrindPublisherConfig.isPublishResultsForAbortedBuilds(),
 						valgrindPublisherConfig.isPublishResultsForFailedBuilds(),
 						valgrindPublisherConfig.isFailBuildOnMissingReports(),
-						valgrindPublisherConfig.isFailBuildOnInvalidReports()
+						valgrindPublisherConfig.isFailBuildOnInvalidReports(),
+						valgrindPublisherConfig.isParseOnAgent(),
+						valgrindPublisherConfig.isDiscardRawReports(),
+						valgrindPublisherConfig.isCountersOnly(),
+						valgrindPublisherConfig.getMaxErrorsPerKind(),
+						valgrindPublisherConfig.getMaxFramesPerStack(),
+						valgrindPublisherConfig.getMaxAuxiliaryPerError(),
+						valgrindPublisherConfig.getHiddenFramePatterns()
 					);
         publisher.perform(build, ws, launcher, listener);
         return null;
@@ -1,18 +1,83 @@
 package org.jenkinsci.plugins.valgrind.util;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import org.jenkinsci.plugins.valgrind.model.ValgrindCounters;
 import org.jenkinsci.plugins.valgrind.model.ValgrindError;
 import org.jenkinsci.plugins.valgrind.model.ValgrindErrorKind;
 
+/**
+ * Per kind view of a list of errors. Counts, per kind lists and leak sums are
+ * computed in a single pass on construction, later changes to the given list
+ * are not reflected. Errors that were only counted while parsing are included
+ * in the counts and sums, but not in the lists.
+ */
 public class ValgrindErrorList
 {
+	private static final ValgrindErrorKind[] KINDS = ValgrindErrorKind.values();
+
 	private List<ValgrindError> errors;
+	private final int omittedErrorCount;
+	private final int[] counts = new int[KINDS.length];
+	private final long[] leakedBytes = new long[KINDS.length];
+	private final long[] leakedBlocks = new long[KINDS.length];
+	private final List<List<ValgrindError>> errorsByKind = new ArrayList<List<ValgrindError>>(KINDS.length);
 	
 	public ValgrindErrorList(List<ValgrindError> errors)
+	{
+		this(errors, null);
+	}
+	
+	public ValgrindErrorList(List<ValgrindError> errors, ValgrindCounters omitted)
 	{
 		this.errors = errors;
+		this.omittedErrorCount = omitted == null ? 0 : omitted.getErrorCount();
+		
+		List<List<ValgrindError>> lists = new ArrayList<List<ValgrindError>>(KINDS.length);
+		for ( int i = 0; i < KINDS.length; ++i )
+			lists.add(null);
+		
+		if ( errors != null )
+		{
+			for ( ValgrindError error : errors )
+			{
+				if ( error.getKind() == null )
+					continue;
+				
+				int ordinal = error.getKind().ordinal();
+				counts[ordinal]++;
+				
+				if ( error.getLeakedBytes() != null )
+					leakedBytes[ordinal] += error.getLeakedBytes().longValue();
+				
+				if ( error.getLeakedBlocks() != null )
+					leakedBlocks[ordinal] += error.getLeakedBlocks().longValue();
+				
+				List<ValgrindError> list = lists.get(ordinal);
+				if ( list == null )
+				{
+					list = new ArrayList<ValgrindError>();
+					lists.set(ordinal, list);
+				}
+				
+				list.add(error);
+			}
+		}
+		
+		for ( List<ValgrindError> list : lists )
+			errorsByKind.add(list == null ? null : Collections.unmodifiableList(list));
+		
+		if ( omitted != null )
+		{
+			for ( ValgrindErrorKind kind : KINDS )
+			{
+				counts[kind.ordinal()] += omitted.getErrorCount(kind);
+				leakedBytes[kind.ordinal()] += omitted.getLeakedBytes(kind);
+				leakedBlocks[kind.ordinal()] += omitted.getLeakedBlocks(kind);
+			}
+		}
 	}
 	
 	public int getOverlapErrorCount()
@@ -202,150 +267,90 @@ public class ValgrindErrorList
 	public int getErrorCount()
 	{
 		if ( errors == null )
-			return 0;
+			return omittedErrorCount;
 		
-		return errors.size();
+		return errors.size() + omittedErrorCount;
+	}
+	
+	/**
+	 * @return the number of errors that are included in the counts but are not
+	 *         available in detail
+	 */
+	public int getOmittedErrorCount()
+	{
+		return omittedErrorCount;
 	}
 	
 	public int getErrorCountByKind( ValgrindErrorKind valgrindErrorKind )
 	{
-		if ( errors == null )
+		if ( valgrindErrorKind == null )
 			return 0;
 		
-		int count = 0;
-		for ( ValgrindError error: errors )
-		{
-			if ( error.getKind() == null )
-				continue;
-			
-			if ( error.getKind().equals( valgrindErrorKind ) )
-				count++;
-		}
-		
-		return count;
+		return counts[valgrindErrorKind.ordinal()];
 	}	
 	
 	public List<ValgrindError> getErrorsByKind( ValgrindErrorKind valgrindErrorKind )
 	{
-		if ( errors == null || errors.isEmpty() )
-			return null;
-		
-		List<ValgrindError> result = new ArrayList<ValgrindError>();
-		
-		for ( ValgrindError error: errors )
-			if ( error.getKind().equals( valgrindErrorKind ) )
-				result.add( error );
-		
-		if ( result.isEmpty() )
+		if ( valgrindErrorKind == null )
 			return null;
 		
-		return result;		
+		return errorsByKind.get(valgrindErrorKind.ordinal());
 	}	
 
-	public int getDefinitelyLeakedBytes()
+	public long getLeakedBytes( ValgrindErrorKind kind )
 	{
-		if ( errors == null )
+		if ( kind == null )
 			return 0;
 		
-		int bytes = 0;
-		
-		for ( ValgrindError error : errors )
-		{
-			if ( error.getKind() != ValgrindErrorKind.Leak_DefinitelyLost )
-				continue;
-			
-			if ( error.getLeakedBytes() == null )
-				continue;
-			
-			bytes += error.getLeakedBytes().intValue();
-		}
-		
-		return bytes;
+		return leakedBytes[kind.ordinal()];
 	}
 	
-	public int getPossiblyLeakedBytes()
+	public long getLeakedBlocks( ValgrindErrorKind kind )
 	{
-		if ( errors == null )
+		if ( kind == null )
 			return 0;
 		
-		int bytes = 0;
-		
-		for ( ValgrindError error : errors )
-		{
-			if ( error.getKind() != ValgrindErrorKind.Leak_PossiblyLost )
-				continue;
-			
-			if ( error.getLeakedBytes() == null )
-				continue;
-			
-			bytes += error.getLeakedBytes().intValue();
-		}
-		
-		return bytes;
+		return leakedBlocks[kind.ordinal()];
+	}
+
+	public long getDefinitelyLeakedBytes()
+	{
+		return getLeakedBytes(ValgrindErrorKind.Leak_DefinitelyLost);
 	}
 	
-	public int getIndirectlyLeakedBytes()
+	public long getPossiblyLeakedBytes()
 	{
-		if ( errors == null )
-			return 0;
-		
-		int bytes = 0;
-		
-		for ( ValgrindError error : errors )
-		{
-			if ( error.getKind() != ValgrindErrorKind.Leak_IndirectlyLost )
-				continue;
-			
-			if ( error.getLeakedBytes() == null )
-				continue;
-			
-			bytes += error.getLeakedBytes().intValue();
-		}
-		
-		return bytes;
+		return getLeakedBytes(ValgrindErrorKind.Leak_PossiblyLost);
+	}
+	
+	public long getIndirectlyLeakedBytes()
+	{
+		return getLeakedBytes(ValgrindErrorKind.Leak_IndirectlyLost);
 	}	
 	
-	public int getStillReachableLeakedBytes()
+	public long getStillReachableLeakedBytes()
 	{
-		if ( errors == null )
-			return 0;
-		
-		int bytes = 0;
-		
-		for ( ValgrindError error : errors )
-		{
-			if ( error.getKind() != ValgrindErrorKind.Leak_StillReachable )
-				continue;
-			
-			if ( error.getLeakedBytes() == null )
-				continue;
-			
-			bytes += error.getLeakedBytes().intValue();
-		}
-		
-		return bytes;
+		return getLeakedBytes(ValgrindErrorKind.Leak_StillReachable);
 	}	
 	
 	@SuppressWarnings("deprecation")
-	public int getLeakedBytes( ValgrindErrorKind kind, String executable )
+	public long getLeakedBytes( ValgrindErrorKind kind, String executable )
 	{
-		if ( errors == null )
+		List<ValgrindError> list = getErrorsByKind(kind);
+		if ( list == null )
 			return 0;
 		
-		int bytes = 0;
+		long bytes = 0;
 		
-		for ( ValgrindError error : errors )
+		for ( ValgrindError error : list )
 		{
-			if ( error.getKind() != kind )
-				continue;
-			
 			if ( !error.getExecutable().equals(executable) )
 				continue;			
 			
 			if ( error.getLeakedBytes() == null )
 				continue;
 			
-			bytes += error.getLeakedBytes().intValue();
+			bytes += error.getLeakedBytes().longValue();
 		}
 		
 		return bytes;
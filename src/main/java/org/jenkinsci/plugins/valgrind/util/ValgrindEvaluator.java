@@ -6,7 +6,8 @@ import hudson.model.Result;
 import hudson.model.Run;
 
 import org.jenkinsci.plugins.valgrind.config.ValgrindPublisherConfig;
-import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
+import org.jenkinsci.plugins.valgrind.model.ValgrindCounters;
+import org.jenkinsci.plugins.valgrind.model.ValgrindErrorKind;
 
 
 public class ValgrindEvaluator
@@ -20,45 +21,69 @@ public class ValgrindEvaluator
 		this.listener = listener;
 	}
 
-	public void evaluate( ValgrindReport report, Run<?, ?> build, EnvVars env )
+	public void evaluate( ValgrindCounters counters, Run<?, ?> build, EnvVars env )
 	{
 		build.setResult( evaluate(
-				report.getErrorList().getLeakDefinitelyLostErrorCount(),
+				counters.getErrorCount(ValgrindErrorKind.Leak_DefinitelyLost),
 				env.expand( config.getUnstableThresholdDefinitelyLost() ),
 				env.expand( config.getFailThresholdDefinitelyLost() ) ) );
 
 		build.setResult( evaluate(
-				report.getErrorList().getInvalidReadErrorCount() + report.getErrorList().getInvalidWriteErrorCount(),
+				counters.getErrorCount(ValgrindErrorKind.InvalidRead) + counters.getErrorCount(ValgrindErrorKind.InvalidWrite),
 				env.expand( config.getUnstableThresholdInvalidReadWrite() ),
 				env.expand( config.getFailThresholdInvalidReadWrite() ) ) );
 
 		build.setResult( evaluate(
-				report.getErrorList().getErrorCount(),
+				counters.getErrorCount(),
 				env.expand( config.getUnstableThresholdTotal() ),
 				env.expand( config.getFailThresholdTotal() ) ) );
 
-		if(report.hasParserErrors() && config.isFailBuildOnInvalidReports())
+		if(counters.hasParserErrors() && config.isFailBuildOnInvalidReports())
 		{
 			build.setResult( Result.FAILURE );
 		}
 	}
 
-	private boolean exceedsThreshold( int errorCount, String threshold )
+	/**
+	 * Parses the fail thresholds once, invalid thresholds are logged here and
+	 * ignored afterwards.
+	 */
+	public FailThresholds getFailThresholds( EnvVars env )
+	{
+		return new FailThresholds(
+				parseThreshold( env.expand( config.getFailThresholdDefinitelyLost() ) ),
+				parseThreshold( env.expand( config.getFailThresholdInvalidReadWrite() ) ),
+				parseThreshold( env.expand( config.getFailThresholdTotal() ) ) );
+	}
+
+	/**
+	 * @return the threshold, or null if none or an invalid one is configured
+	 */
+	private Integer parseThreshold( String threshold )
 	{
 		if ( threshold == null || threshold.isEmpty() )
-			return false;
+			return null;
 
 		try
 		{
-			Integer i = Integer.valueOf(threshold);
-			return errorCount > i.intValue();
+			return Integer.valueOf(threshold);
 		}
 		catch( NumberFormatException e )
 		{
 			ValgrindLogger.log( listener, "ERROR: '" + threshold + "' is not a valid threshold" );
 		}
 
-		return false;
+		return null;
+	}
+
+	private boolean exceedsThreshold( int errorCount, String threshold )
+	{
+		return exceedsThreshold( errorCount, parseThreshold( threshold ) );
+	}
+
+	private static boolean exceedsThreshold( int errorCount, Integer threshold )
+	{
+		return threshold != null && errorCount > threshold.intValue();
 	}
 
 	private Result evaluate( int errorCount, String unstableThreshold, String failThreshold )
@@ -72,4 +97,38 @@ public class ValgrindEvaluator
 		return Result.SUCCESS;
 	}
 
+	/**
+	 * Fail thresholds for checking counts repeatedly while valgrind is
+	 * running.
+	 */
+	public static class FailThresholds
+	{
+		private final Integer definitelyLost;
+		private final Integer invalidReadWrite;
+		private final Integer total;
+
+		FailThresholds( Integer definitelyLost, Integer invalidReadWrite, Integer total )
+		{
+			this.definitelyLost = definitelyLost;
+			this.invalidReadWrite = invalidReadWrite;
+			this.total = total;
+		}
+
+		/**
+		 * @return true if one of the fail thresholds is exceeded by the given
+		 *         counts, more errors can only make the build fail as well
+		 */
+		public boolean isExceeded( ValgrindCounters counters )
+		{
+			return exceedsThreshold(
+						counters.getErrorCount(ValgrindErrorKind.Leak_DefinitelyLost),
+						definitelyLost )
+					|| exceedsThreshold(
+						counters.getErrorCount(ValgrindErrorKind.InvalidRead) + counters.getErrorCount(ValgrindErrorKind.InvalidWrite),
+						invalidReadWrite )
+					|| exceedsThreshold(
+						counters.getErrorCount(),
+						total );
+		}
+	}
 }
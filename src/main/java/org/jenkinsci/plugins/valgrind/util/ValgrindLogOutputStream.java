@@ -0,0 +1,132 @@
+package org.jenkinsci.plugins.valgrind.util;
+
+import hudson.model.TaskListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Forwards the output of a valgrind call to the build log line by line, as
+ * it is written, instead of collecting it in memory. Lines longer than
+ * {@link #MAX_LINE_LENGTH} bytes are split between two UTF-8 characters,
+ * output beyond the given limit is dropped.
+ */
+public class ValgrindLogOutputStream extends OutputStream
+{
+	public static final int MAX_LINE_LENGTH = 8192;
+
+	private final TaskListener listener;
+	private final String name;
+	private final long limit;
+	private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+	private long written = 0;
+	private long dropped = 0;
+
+	/**
+	 * @param name
+	 *            written in front of every line, e.g. "stdout"
+	 * @param limit
+	 *            maximum number of bytes to forward, 0 for no limit
+	 */
+	public ValgrindLogOutputStream(TaskListener listener, String name, long limit)
+	{
+		this.listener = listener;
+		this.name = name;
+		this.limit = limit;
+	}
+
+	private boolean isFull()
+	{
+		return limit > 0 && written >= limit;
+	}
+
+	@Override
+	public void write(int b) throws IOException
+	{
+		if (isFull())
+		{
+			dropped++;
+			return;
+		}
+
+		line.write(b);
+		written++;
+
+		if (b == '\n')
+			eol();
+		else if (line.size() >= MAX_LINE_LENGTH)
+			split();
+
+		if (isFull())
+		{
+			eol();
+			ValgrindLogger.log(listener, name + ": output limit of " + limit + " bytes reached, the rest is not logged");
+		}
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		for (int i = off; i < off + len; i++)
+			write(b[i]);
+	}
+
+	/**
+	 * Logs the line up to its last complete character, the bytes of an
+	 * incomplete one are kept for the next line.
+	 */
+	private void split() throws IOException
+	{
+		byte[] bytes = line.toByteArray();
+		int end = getCharacterBoundary(bytes, bytes.length);
+
+		line.reset();
+		line.write(bytes, 0, end);
+		eol();
+		line.write(bytes, end, bytes.length - end);
+	}
+
+	/**
+	 * @return the start of the UTF-8 sequence that is cut off at the given
+	 *         length, the length if there is none
+	 */
+	static int getCharacterBoundary(byte[] bytes, int length)
+	{
+		// continuation bytes are 10xxxxxx, a sequence has at most 4 bytes
+		int start = length - 1;
+		while (start > 0 && length - start < 4 && (bytes[start] & 0xC0) == 0x80)
+			start--;
+
+		if (start <= 0)
+			return length;
+
+		int lead = bytes[start] & 0xFF;
+		int sequenceLength = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+
+		return length - start < sequenceLength ? start : length;
+	}
+
+	private void eol() throws IOException
+	{
+		if (line.size() == 0)
+			return;
+
+		String s = line.toString("UTF-8");
+		line.reset();
+
+		while (s.endsWith("\n") || s.endsWith("\r"))
+			s = s.substring(0, s.length() - 1);
+
+		ValgrindLogger.log(listener, name + ": " + s);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		eol();
+
+		if (dropped > 0)
+			ValgrindLogger.log(listener, name + ": " + dropped + " bytes were not logged");
+	}
+}
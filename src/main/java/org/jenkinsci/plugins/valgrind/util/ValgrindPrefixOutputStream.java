@@ -0,0 +1,41 @@
+package org.jenkinsci.plugins.valgrind.util;
+
+import hudson.console.LineTransformationOutputStream;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+
+/**
+ * Writes each line to the underlying stream at once and in front of it the
+ * given prefix, so that the output of valgrind calls running at the same
+ * time can be told apart in the build log.
+ */
+public class ValgrindPrefixOutputStream extends LineTransformationOutputStream
+{
+	private final PrintStream out;
+	private final byte[] prefix;
+
+	public ValgrindPrefixOutputStream(PrintStream out, String prefix, Charset charset)
+	{
+		this.out = out;
+		this.prefix = prefix.getBytes(charset);
+	}
+
+	@Override
+	protected void eol(byte[] b, int len) throws IOException
+	{
+		synchronized (out)
+		{
+			out.write(prefix);
+			out.write(b, 0, len);
+			out.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		forceEol();
+	}
+}
@@ -0,0 +1,410 @@
+package org.jenkinsci.plugins.valgrind.util;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.Run;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.jenkinsci.plugins.valgrind.model.ValgrindAuxiliary;
+import org.jenkinsci.plugins.valgrind.model.ValgrindError;
+import org.jenkinsci.plugins.valgrind.model.ValgrindProcess;
+import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
+import org.jenkinsci.plugins.valgrind.model.ValgrindStacktrace;
+import org.jenkinsci.plugins.valgrind.model.ValgrindStacktraceFrame;
+import org.jenkinsci.plugins.valgrind.model.ValgrindThread;
+
+/**
+ * Controller wide cache of loaded valgrind reports, keyed by build.
+ *
+ * Reports are held strongly until the estimated size of all strongly held
+ * reports exceeds the configured limit, least recently used reports are then
+ * demoted to soft references and are dropped by the garbage collector under
+ * heap pressure. Concurrent requests for a report that is not cached wait for
+ * a single load instead of loading it themselves.
+ *
+ * Cached reports are shared by all callers and must not be modified. Entries
+ * of deleted builds and jobs are dropped, renaming a job drops all entries.
+ */
+public class ValgrindReportCache
+{
+	/**
+	 * Upper bound for the estimated size of all strongly referenced reports,
+	 * defaults to a tenth of the maximum heap size.
+	 */
+	public static final long MAX_BYTES = Long.getLong(ValgrindReportCache.class.getName() + ".maxBytes",
+			Runtime.getRuntime().maxMemory() / 10);
+
+	private static final ValgrindReportCache INSTANCE = new ValgrindReportCache(MAX_BYTES);
+
+	public interface Loader
+	{
+		ValgrindReport load() throws IOException, InterruptedException;
+	}
+
+	private static class Entry
+	{
+		final ValgrindReport report;
+		final long bytes;
+
+		Entry(ValgrindReport report, long bytes)
+		{
+			this.report = report;
+			this.bytes = bytes;
+		}
+	}
+
+	private static class SoftEntry extends SoftReference<ValgrindReport>
+	{
+		final String key;
+		final long bytes;
+
+		SoftEntry(String key, ValgrindReport report, long bytes, ReferenceQueue<ValgrindReport> queue)
+		{
+			super(report, queue);
+			this.key = key;
+			this.bytes = bytes;
+		}
+	}
+
+	private final long maxBytes;
+	private final LinkedHashMap<String, Entry> strong = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+	private final Map<String, SoftEntry> soft = new HashMap<String, SoftEntry>();
+	private final ReferenceQueue<ValgrindReport> queue = new ReferenceQueue<ValgrindReport>();
+	private final ConcurrentMap<String, FutureTask<ValgrindReport>> loading = new ConcurrentHashMap<String, FutureTask<ValgrindReport>>();
+	private long strongBytes = 0;
+
+	public ValgrindReportCache(long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+	}
+
+	public static ValgrindReportCache getInstance()
+	{
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns the cached report for the given key or loads it using the given
+	 * loader. Only one loader runs per key at a time, other callers wait for
+	 * its result.
+	 */
+	public ValgrindReport get(String key, final Loader loader) throws IOException, InterruptedException
+	{
+		ValgrindReport report = lookup(key);
+		if ( report != null )
+			return report;
+
+		FutureTask<ValgrindReport> task = new FutureTask<ValgrindReport>(new Callable<ValgrindReport>()
+		{
+			public ValgrindReport call() throws Exception
+			{
+				return loader.load();
+			}
+		});
+
+		FutureTask<ValgrindReport> running = loading.putIfAbsent(key, task);
+		if ( running == null )
+		{
+			running = task;
+			task.run();
+		}
+
+		try
+		{
+			report = running.get();
+
+			if ( running == task && report != null )
+			{
+				long bytes = estimateSize(report);
+
+				// only store the result if nobody invalidated the key while loading
+				synchronized (this)
+				{
+					if ( loading.get(key) == task )
+						put(key, report, bytes);
+				}
+			}
+
+			return report;
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+
+			if ( cause instanceof IOException )
+				throw (IOException) cause;
+			if ( cause instanceof InterruptedException )
+				throw (InterruptedException) cause;
+			if ( cause instanceof RuntimeException )
+				throw (RuntimeException) cause;
+			if ( cause instanceof Error )
+				throw (Error) cause;
+
+			throw new IOException(cause);
+		}
+		finally
+		{
+			if ( running == task )
+				loading.remove(key, task);
+		}
+	}
+
+	public synchronized void invalidate(String key)
+	{
+		loading.remove(key);
+		remove(key);
+	}
+
+	/**
+	 * Drops all entries with keys starting with the given prefix, e.g. all
+	 * builds of a job.
+	 */
+	public synchronized void invalidateAll(String prefix)
+	{
+		for ( Iterator<String> it = loading.keySet().iterator(); it.hasNext(); )
+		{
+			if ( it.next().startsWith(prefix) )
+				it.remove();
+		}
+
+		for ( Iterator<String> it = soft.keySet().iterator(); it.hasNext(); )
+		{
+			if ( it.next().startsWith(prefix) )
+				it.remove();
+		}
+
+		for ( Iterator<Map.Entry<String, Entry>> it = strong.entrySet().iterator(); it.hasNext(); )
+		{
+			Map.Entry<String, Entry> entry = it.next();
+			if ( entry.getKey().startsWith(prefix) )
+			{
+				it.remove();
+				strongBytes -= entry.getValue().bytes;
+			}
+		}
+	}
+
+	public synchronized void clear()
+	{
+		loading.clear();
+		soft.clear();
+		strong.clear();
+		strongBytes = 0;
+	}
+
+	private synchronized ValgrindReport lookup(String key)
+	{
+		expungeStaleEntries();
+
+		Entry entry = strong.get(key);
+		if ( entry != null )
+			return entry.report;
+
+		SoftEntry ref = soft.get(key);
+		if ( ref == null )
+			return null;
+
+		ValgrindReport report = ref.get();
+		if ( report != null )
+			put(key, report, ref.bytes);
+
+		return report;
+	}
+
+	private void remove(String key)
+	{
+		soft.remove(key);
+
+		Entry entry = strong.remove(key);
+		if ( entry != null )
+			strongBytes -= entry.bytes;
+	}
+
+	private void put(String key, ValgrindReport report, long bytes)
+	{
+		remove(key);
+
+		if ( bytes > maxBytes )
+		{
+			soft.put(key, new SoftEntry(key, report, bytes, queue));
+			return;
+		}
+
+		strong.put(key, new Entry(report, bytes));
+		strongBytes += bytes;
+
+		Iterator<Map.Entry<String, Entry>> it = strong.entrySet().iterator();
+		while ( strongBytes > maxBytes && it.hasNext() )
+		{
+			Map.Entry<String, Entry> eldest = it.next();
+			if ( eldest.getKey().equals(key) )
+				continue;
+
+			it.remove();
+			strongBytes -= eldest.getValue().bytes;
+			soft.put(eldest.getKey(), new SoftEntry(eldest.getKey(), eldest.getValue().report, eldest.getValue().bytes, queue));
+		}
+	}
+
+	private void expungeStaleEntries()
+	{
+		SoftEntry ref;
+		while ( (ref = (SoftEntry) queue.poll()) != null )
+		{
+			if ( soft.get(ref.key) == ref )
+				soft.remove(ref.key);
+		}
+	}
+
+	/**
+	 * Rough estimate of the heap used by a report, based on typical object
+	 * header and reference sizes of a 64 bit JVM.
+	 */
+	public static long estimateSize(ValgrindReport report)
+	{
+		long bytes = 64;
+
+		List<ValgrindProcess> processes = report.getProcesses();
+		if ( processes == null )
+			return bytes;
+
+		for ( ValgrindProcess process : processes )
+		{
+			bytes += 96;
+			bytes += estimateSize(process.getExecutable());
+			bytes += estimateSize(process.getPid());
+			bytes += estimateSize(process.getPpid());
+			bytes += estimateStringListSize(process.getArguments());
+			bytes += estimateStringListSize(process.getValgrindArguments());
+
+			if ( process.getErrors() != null )
+			{
+				for ( ValgrindError error : process.getErrors() )
+				{
+					bytes += 72;
+					bytes += estimateSize(error.getUniqueId());
+					bytes += estimateSize(error.getDescription());
+					bytes += estimateSize(error.getSuppression());
+					bytes += estimateSize(error.getStacktrace());
+
+					if ( error.getAuxiliaryData() != null )
+					{
+						for ( ValgrindAuxiliary aux : error.getAuxiliaryData() )
+						{
+							bytes += 32;
+							bytes += estimateSize(aux.getDescription());
+							bytes += estimateSize(aux.getStacktrace());
+						}
+					}
+				}
+			}
+
+			if ( process.getThreads() != null )
+			{
+				for ( ValgrindThread thread : process.getThreads() )
+				{
+					bytes += 32;
+					bytes += estimateSize(thread.getHthreadid());
+					bytes += estimateSize(thread.getStacktrace());
+				}
+			}
+		}
+
+		return bytes;
+	}
+
+	private static long estimateSize(ValgrindStacktrace stacktrace)
+	{
+		if ( stacktrace == null || stacktrace.getFrames() == null )
+			return 0;
+
+		long bytes = 56;
+		for ( ValgrindStacktraceFrame frame : stacktrace.getFrames() )
+		{
+			bytes += 48;
+
+			if ( frame == null )
+				continue;
+
+			bytes += estimateSize(frame.getObjectName());
+			bytes += estimateSize(frame.getDirectoryName());
+			bytes += estimateSize(frame.getFileName());
+			bytes += estimateSize(frame.getFunctionName());
+			bytes += estimateSize(frame.getSourceCode());
+		}
+
+		return bytes;
+	}
+
+	private static long estimateStringListSize(List<String> strings)
+	{
+		if ( strings == null )
+			return 0;
+
+		long bytes = 40 + 8 * strings.size();
+		for ( String s : strings )
+			bytes += estimateSize(s);
+
+		return bytes;
+	}
+
+	private static long estimateSize(String s)
+	{
+		if ( s == null )
+			return 0;
+
+		return 40 + 2 * s.length();
+	}
+
+	/**
+	 * @return the cache key of the report of the given build directory
+	 */
+	public static String getKey(File buildDir)
+	{
+		return buildDir.getAbsolutePath();
+	}
+
+	@Extension
+	@SuppressWarnings("rawtypes")
+	public static class RunDeletedListener extends RunListener<Run>
+	{
+		@Override
+		public void onDeleted(Run run)
+		{
+			getInstance().invalidate(getKey(run.getRootDir()));
+		}
+	}
+
+	@Extension
+	public static class JobListener extends ItemListener
+	{
+		@Override
+		public void onDeleted(Item item)
+		{
+			getInstance().invalidateAll(getKey(item.getRootDir()) + File.separator);
+		}
+
+		@Override
+		public void onLocationChanged(Item item, String oldFullName, String newFullName)
+		{
+			// the build directories moved along with the job
+			getInstance().clear();
+		}
+	}
+}
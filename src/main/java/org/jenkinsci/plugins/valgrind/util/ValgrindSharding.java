@@ -0,0 +1,87 @@
+package org.jenkinsci.plugins.valgrind.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits executables into shards that run on different nodes. Every shard
+ * computes the same split independently, so the split only depends on the
+ * names of the executables and the durations of a previous build.
+ */
+public abstract class ValgrindSharding
+{
+	/**
+	 * Assigns the longest running executables first, each to the shard with
+	 * the least total duration so far. Executables without a duration are
+	 * assumed to take the average time of the others.
+	 *
+	 * @param names
+	 *            unique names of all executables
+	 * @param durations
+	 *            durations per name, may be empty
+	 * @return the names of the given shard, in the order of the given names
+	 */
+	public static List<String> select(List<String> names, final Map<String, Long> durations, int shardIndex, int shardCount)
+	{
+		long known = 0;
+		int knownCount = 0;
+		for (String name : names)
+		{
+			Long duration = durations.get(name);
+			if (duration != null)
+			{
+				known += duration;
+				knownCount++;
+			}
+		}
+
+		final long average = knownCount == 0 ? 1 : Math.max(1, known / knownCount);
+
+		List<String> sorted = new ArrayList<String>(names);
+		Collections.sort(sorted, new Comparator<String>()
+		{
+			public int compare(String a, String b)
+			{
+				int c = Long.valueOf(duration(b)).compareTo(duration(a));
+				return c != 0 ? c : a.compareTo(b);
+			}
+
+			private long duration(String name)
+			{
+				Long duration = durations.get(name);
+				return duration == null ? average : duration;
+			}
+		});
+
+		long[] totals = new long[shardCount];
+		List<String> selected = new ArrayList<String>();
+
+		for (String name : sorted)
+		{
+			int shard = 0;
+			for (int i = 1; i < shardCount; ++i)
+			{
+				if (totals[i] < totals[shard])
+					shard = i;
+			}
+
+			Long duration = durations.get(name);
+			totals[shard] += duration == null ? average : duration;
+
+			if (shard == shardIndex)
+				selected.add(name);
+		}
+
+		List<String> result = new ArrayList<String>();
+		for (String name : names)
+		{
+			if (selected.contains(name))
+				result.add(name);
+		}
+
+		return result;
+	}
+}
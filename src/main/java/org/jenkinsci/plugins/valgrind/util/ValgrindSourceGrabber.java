@@ -79,6 +79,34 @@ public class ValgrindSourceGrabber
 		}
 	}
 
+	/**
+	 * Adds source files copied before, e.g. by the publisher of another shard,
+	 * they are neither copied again nor overwritten.
+	 */
+	public void addExisting(Map<String, String> existing)
+	{
+		if ( existing == null )
+			return;
+
+		for ( Map.Entry<String, String> e : existing.entrySet() )
+		{
+			lookup.put( e.getKey(), e.getValue() );
+
+			String fileName = e.getValue();
+			if ( fileName == null || !fileName.startsWith("source_") || !fileName.endsWith(".tmp") )
+				continue;
+
+			try
+			{
+				index = Math.max( index, Integer.parseInt( fileName.substring( "source_".length(), fileName.length() - ".tmp".length() ) ) );
+			}
+			catch ( NumberFormatException ex )
+			{
+				// not named by this class
+			}
+		}
+	}
+
     public Map<String, String> getLookupMap()
 	{
 		return lookup;
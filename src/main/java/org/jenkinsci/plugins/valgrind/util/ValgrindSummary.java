@@ -3,6 +3,8 @@ package org.jenkinsci.plugins.valgrind.util;
 import java.io.IOException;
 
 import org.jenkinsci.plugins.valgrind.ValgrindResult;
+import org.jenkinsci.plugins.valgrind.model.ValgrindCounters;
+import org.jenkinsci.plugins.valgrind.model.ValgrindErrorKind;
 
 public class ValgrindSummary
 {
@@ -19,11 +21,15 @@ public class ValgrindSummary
 	{
 
 		StringBuilder summary = new StringBuilder();
-		int errorCount = result.getReport().getErrorList().getErrorCount();
+		ValgrindCounters counters = result.getCounters();
+		int errorCount = counters.getErrorCount();
 
 		if (errorCount == 0)
 		{
 			summary.append("no errors");
+
+			if (counters.getSuppressedCount() > 0)
+				summary.append(" (" + counters.getSuppressedCount() + " suppressed)");
 		}
 		else
 		{
@@ -34,9 +40,12 @@ public class ValgrindSummary
 			else
 				summary.append(Integer.toString(errorCount) + " errors, ");
 
-			summary.append(result.getReport().getErrorList().getDefinitelyLeakedBytes());
+			summary.append(counters.getLeakedBytes(ValgrindErrorKind.Leak_DefinitelyLost));
 			summary.append(" bytes definitely lost");
 
+			if (counters.getSuppressedCount() > 0)
+				summary.append(", " + counters.getSuppressedCount() + " suppressed");
+
 			summary.append("</a>");
 		}
 
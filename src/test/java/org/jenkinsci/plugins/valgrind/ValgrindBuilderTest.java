@@ -0,0 +1,181 @@
+package org.jenkinsci.plugins.valgrind;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.TaskListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jenkinsci.plugins.valgrind.call.ValgrindCall;
+import org.jenkinsci.plugins.valgrind.call.ValgrindExecutable;
+import org.junit.Test;
+
+public class ValgrindBuilderTest
+{
+	private static List<Callable<Boolean>> tasks(final List<Integer> calls, final AtomicInteger running, final AtomicInteger maxRunning,
+			final int count, final int failing)
+	{
+		List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+		for ( int i = 0; i < count; ++i )
+		{
+			final int index = i;
+			tasks.add(new Callable<Boolean>()
+			{
+				public Boolean call() throws Exception
+				{
+					int n = running.incrementAndGet();
+					synchronized (maxRunning)
+					{
+						maxRunning.set(Math.max(maxRunning.get(), n));
+					}
+
+					Thread.sleep(20);
+					calls.add(index);
+					running.decrementAndGet();
+
+					return index != failing;
+				}
+			});
+		}
+
+		return tasks;
+	}
+
+	@Test
+	public void callAllInOrder() throws Exception
+	{
+		List<Integer> calls = Collections.synchronizedList(new ArrayList<Integer>());
+		AtomicInteger maxRunning = new AtomicInteger();
+
+		assertTrue( ValgrindBuilder.callAll(tasks(calls, new AtomicInteger(), maxRunning, 4, -1), 1) );
+		assertEquals( Arrays.asList(0, 1, 2, 3), calls );
+		assertEquals( 1, maxRunning.get() );
+	}
+
+	@Test
+	public void callAllConcurrently() throws Exception
+	{
+		List<Integer> calls = Collections.synchronizedList(new ArrayList<Integer>());
+		AtomicInteger maxRunning = new AtomicInteger();
+
+		// a failing task doesn't stop the others
+		assertFalse( ValgrindBuilder.callAll(tasks(calls, new AtomicInteger(), maxRunning, 8, 2), 3) );
+		assertEquals( 8, calls.size() );
+		assertTrue( maxRunning.get() > 1 );
+		assertTrue( maxRunning.get() <= 3 );
+	}
+
+	@Test(expected = IOException.class)
+	public void callAllRethrowsAfterAllFinished() throws Exception
+	{
+		final AtomicInteger finished = new AtomicInteger();
+
+		List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+		tasks.add(new Callable<Boolean>()
+		{
+			public Boolean call() throws Exception
+			{
+				throw new IOException("failed");
+			}
+		});
+		for ( int i = 0; i < 3; ++i )
+		{
+			tasks.add(new Callable<Boolean>()
+			{
+				public Boolean call() throws Exception
+				{
+					Thread.sleep(20);
+					finished.incrementAndGet();
+					return true;
+				}
+			});
+		}
+
+		try
+		{
+			ValgrindBuilder.callAll(tasks, 2);
+		}
+		finally
+		{
+			assertEquals( 3, finished.get() );
+		}
+	}
+
+	/**
+	 * @return exit code of a valgrind running the given script instead of a
+	 *         program
+	 */
+	private static int exec(ValgrindCall call, String script, File directory) throws IOException, InterruptedException
+	{
+		File valgrind = new File(directory, "valgrind");
+		OutputStream out = new FileOutputStream(valgrind);
+		try
+		{
+			out.write(("#!/bin/sh\nif [ \"$1\" = --version ]; then echo valgrind-3.10.0; exit 0; fi\n" + script).getBytes("UTF-8"));
+		}
+		finally
+		{
+			out.close();
+		}
+		valgrind.setExecutable(true);
+
+		Launcher launcher = new Launcher.LocalLauncher(TaskListener.NULL);
+		call.setValgrindExecutable(new ValgrindExecutable(launcher, valgrind.getPath()));
+		call.setEnv(new EnvVars());
+		call.setProgramName("program");
+		call.setWorkingDirectory(new FilePath(directory));
+
+		try
+		{
+			return call.exec(TaskListener.NULL, launcher, new ByteArrayOutputStream(), new ByteArrayOutputStream());
+		}
+		finally
+		{
+			valgrind.delete();
+		}
+	}
+
+	@Test
+	public void timeLimitDoesNotStopRemainingExecutables() throws Exception
+	{
+		File directory = File.createTempFile("valgrind", "");
+		directory.delete();
+		directory.mkdir();
+		try
+		{
+			ValgrindCall call = new ValgrindCall();
+			call.setTimeLimit(1000);
+			int exitCode = exec(call, "sleep 10\n", directory);
+
+			assertTrue( call.isTimeLimitExceeded() );
+			assertTrue( ValgrindBuilder.isContinued(call, exitCode, false) );
+
+			call = new ValgrindCall();
+			call.setTimeLimit(60000);
+			exitCode = exec(call, "exit 1\n", directory);
+
+			assertFalse( call.isTimeLimitExceeded() );
+			assertFalse( ValgrindBuilder.isContinued(call, exitCode, false) );
+			assertTrue( ValgrindBuilder.isContinued(call, exitCode, true) );
+		}
+		finally
+		{
+			directory.delete();
+		}
+	}
+}
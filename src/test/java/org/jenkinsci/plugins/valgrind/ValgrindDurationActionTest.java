@@ -0,0 +1,70 @@
+package org.jenkinsci.plugins.valgrind;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ValgrindDurationActionTest
+{
+	@Test
+	public void longestFirst()
+	{
+		Map<String, Long> durations = new HashMap<String, Long>();
+		durations.put("short", 5000L);
+		durations.put("long", 2400000L);
+		durations.put("medium", 60000L);
+
+		ValgrindDurationAction action = new ValgrindDurationAction();
+		action.record(durations);
+
+		List<String> names = new ArrayList<String>(Arrays.asList("short", "medium", "new", "long"));
+		Collections.sort(names, action.longestFirst());
+
+		assertEquals( Arrays.asList("new", "long", "medium", "short"), names );
+	}
+
+	@Test
+	public void keepsOnlyExecutablesOfThisBuild()
+	{
+		ValgrindDurationAction previous = new ValgrindDurationAction();
+		previous.record(Collections.singletonMap("a", 1000L));
+		previous.record(Collections.singletonMap("b", 2000L));
+		previous.record(Collections.singletonMap("removed", 4000L));
+
+		// "a" was skipped or its report reused in this build
+		ValgrindDurationAction action = new ValgrindDurationAction();
+		action.record(Collections.singletonMap("b", 3000L), Arrays.asList("a", "b", "c"), previous);
+
+		assertEquals( 2, action.getDurations().size() );
+		assertEquals( Long.valueOf(1000L), action.getDurations().get("a") );
+		assertEquals( Long.valueOf(3000L), action.getDurations().get("b") );
+		assertEquals( Long.valueOf(2000L), previous.getDurations().get("b") );
+	}
+
+	@Test
+	public void shardsSplitByTheSameDurations()
+	{
+		ValgrindDurationAction previous = new ValgrindDurationAction();
+		previous.record(Collections.singletonMap("a", 1000L));
+
+		// a later shard sees a build that completed in the meantime
+		ValgrindDurationAction later = new ValgrindDurationAction();
+		later.record(Collections.singletonMap("b", 2000L));
+
+		ValgrindDurationAction action = new ValgrindDurationAction();
+		assertEquals( previous.getDurations(), action.getShardDurations(previous) );
+		assertEquals( previous.getDurations(), action.getShardDurations(later) );
+		assertEquals( previous.getDurations(), action.getShardDurations(null) );
+
+		action = new ValgrindDurationAction();
+		assertEquals( 0, action.getShardDurations(null).size() );
+		assertEquals( 0, action.getShardDurations(previous).size() );
+	}
+}
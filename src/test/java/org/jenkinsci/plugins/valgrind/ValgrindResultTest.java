@@ -0,0 +1,126 @@
+package org.jenkinsci.plugins.valgrind;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.jenkinsci.plugins.valgrind.model.ValgrindCounters;
+import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
+import org.jenkinsci.plugins.valgrind.parser.ValgrindParserResult;
+import org.jenkinsci.plugins.valgrind.parser.ValgrindReportSnapshot;
+import org.jenkinsci.plugins.valgrind.parser.ValgrindStaxParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ValgrindResultTest
+{
+	private static final String RESOURCES = "src/test/resources/org/jenkinsci/plugins/valgrind/parser/";
+
+	private File rootDir;
+
+	@Before
+	public void setup() throws IOException
+	{
+		rootDir = File.createTempFile("valgrind", "");
+		rootDir.delete();
+		rootDir.mkdirs();
+	}
+
+	@After
+	public void cleanup()
+	{
+		delete(rootDir);
+	}
+
+	private static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if ( children != null )
+		{
+			for ( File child : children )
+				delete(child);
+		}
+
+		file.delete();
+	}
+
+	private void copy(String resource, String directory, String name) throws IOException
+	{
+		InputStream is = new FileInputStream(RESOURCES + resource);
+		OutputStream os = new FileOutputStream(new File(new File(rootDir, directory), name));
+		try
+		{
+			byte[] buffer = new byte[4096];
+			for ( int n; (n = is.read(buffer)) > 0; )
+				os.write(buffer, 0, n);
+		}
+		finally
+		{
+			is.close();
+			os.close();
+		}
+	}
+
+	private ValgrindReport publish(String directory) throws IOException, InterruptedException
+	{
+		return new ValgrindParserResult(directory + "/*.xml").invoke(rootDir, null);
+	}
+
+	@Test
+	public void publishTwice() throws IOException, InterruptedException
+	{
+		String first = ValgrindResult.allocateResultsDirectory(rootDir);
+		copy("aux-data.xml", first, "vg.1.xml");
+		ValgrindReport published = publish(first);
+		ValgrindCounters publishedCounters = ValgrindCounters.createInstance(published);
+
+		// a second shard with files of the same name
+		String second = ValgrindResult.allocateResultsDirectory(rootDir);
+		copy("aux-data.xml", second, "vg.1.xml");
+		ValgrindReport report = publish(second);
+
+		assertEquals( ValgrindResult.RESULTS_DIRECTORY, first );
+		assertTrue( !first.equals(second) );
+		assertEquals( 1, report.getProcesses().size() );
+
+		ValgrindReport merged = ValgrindResult.merge(published, report);
+		ValgrindCounters counters = new ValgrindCounters.Builder()
+				.add(publishedCounters)
+				.add(ValgrindCounters.createInstance(report))
+				.build();
+
+		assertEquals( 2, merged.getProcesses().size() );
+		assertEquals( 6, merged.getErrorList().getErrorCount() );
+		assertEquals( 2, counters.getProcessCount() );
+		assertEquals( 6, counters.getErrorCount() );
+		assertEquals( 1, published.getProcesses().size() );
+	}
+
+	@Test
+	public void streamedReportsArePublishedOnce() throws Exception
+	{
+		assertNull( ValgrindResult.takeStreamedReports(rootDir, "**/*.memcheck") );
+
+		ValgrindReport report = new ValgrindStaxParser().parse(new File(RESOURCES + "simple.xml"));
+		ValgrindReportSnapshot.write(new File(rootDir, ValgrindResult.STREAMED_DIRECTORY + "/out/a.1.memcheck"), report);
+		ValgrindReportSnapshot.write(new File(rootDir, ValgrindResult.STREAMED_DIRECTORY + "/out/b.2.helgrind"), report);
+
+		String first = ValgrindResult.takeStreamedReports(rootDir, "**/*.memcheck");
+		ValgrindReport published = ValgrindParserResult.forSnapshots(first + "/**/*.memcheck").invoke(rootDir, null);
+		assertEquals( 1, published.getProcesses().size() );
+
+		// a second publisher gets only what the first one didn't take
+		assertNull( ValgrindResult.takeStreamedReports(rootDir, "**/*.memcheck") );
+		String second = ValgrindResult.takeStreamedReports(rootDir, "**/*.helgrind");
+		assertTrue( !first.equals(second) );
+		assertEquals( 1, ValgrindParserResult.forSnapshots(second + "/**/*.helgrind").invoke(rootDir, null).getProcesses().size() );
+	}
+}
@@ -0,0 +1,50 @@
+package org.jenkinsci.plugins.valgrind.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.jenkinsci.plugins.valgrind.parser.ValgrindSaxParser;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class ValgrindCountersTest
+{
+	@Test
+	public void matchesErrorList() throws ParserConfigurationException, SAXException, IOException
+	{
+		ValgrindReport report = new ValgrindSaxParser().parse(new File("src/test/resources/org/jenkinsci/plugins/valgrind/parser/aux-data.xml"));
+		ValgrindCounters counters = ValgrindCounters.createInstance(report);
+
+		assertEquals( report.getErrorList().getErrorCount(), counters.getErrorCount() );
+		assertEquals( report.getErrorList().getUninitializedConditionErrorCount(), counters.getErrorCount(ValgrindErrorKind.UninitCondition) );
+		assertEquals( report.getErrorList().getDefinitelyLeakedBytes(), counters.getLeakedBytes(ValgrindErrorKind.Leak_DefinitelyLost) );
+		assertEquals( 1, counters.getProcessCount() );
+		assertFalse( counters.hasParserErrors() );
+	}
+
+	@Test
+	public void merge()
+	{
+		ValgrindCounters counters = new ValgrindCounters.Builder()
+			.addError(ValgrindErrorKind.Leak_DefinitelyLost, 16, 1)
+			.addProcess()
+			.build();
+
+		ValgrindCounters merged = new ValgrindCounters.Builder()
+			.add(counters)
+			.add(counters)
+			.build();
+
+		assertEquals( 2, merged.getErrorCount() );
+		assertEquals( 2, merged.getErrorCount(ValgrindErrorKind.Leak_DefinitelyLost) );
+		assertEquals( 32, merged.getLeakedBytes(ValgrindErrorKind.Leak_DefinitelyLost) );
+		assertEquals( 2, merged.getLeakedBlocks(ValgrindErrorKind.Leak_DefinitelyLost) );
+		assertEquals( 2, merged.getProcessCount() );
+		assertEquals( 0, merged.getErrorCount(ValgrindErrorKind.Race) );
+	}
+}
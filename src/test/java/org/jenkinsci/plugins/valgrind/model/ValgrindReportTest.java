@@ -0,0 +1,108 @@
+package org.jenkinsci.plugins.valgrind.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+
+public class ValgrindReportTest
+{
+	private static ValgrindProcess createProcess(String pid, String ppid)
+	{
+		ValgrindProcess process = new ValgrindProcess();
+		process.setExecutable("program");
+		process.setPid(pid);
+		process.setPpid(ppid);
+		return process;
+	}
+
+	@Test
+	public void lookups()
+	{
+		ValgrindReport report = new ValgrindReport();
+		ValgrindProcess process = createProcess("100", "1");
+		report.addProcess(process);
+
+		ValgrindError error = new ValgrindError();
+		error.setUniqueId("0x1");
+		process.addError(error);
+
+		ValgrindThread thread = new ValgrindThread();
+		thread.setHthreadid("2");
+		process.addThread(thread);
+
+		assertSame( process, report.findProcess("100") );
+		assertSame( error, report.findError("100", "0x1") );
+		assertSame( thread, report.findThread("100", "2") );
+		assertNull( report.findError("100", "0x2") );
+		assertNull( report.findThread("100", "3") );
+
+		// indices are rebuilt after changes
+		ValgrindProcess other = createProcess("101", "1");
+		report.addProcess(other);
+		assertSame( other, report.findProcess("101") );
+
+		ValgrindError second = new ValgrindError();
+		second.setUniqueId("0x2");
+		process.addError(second);
+		assertSame( second, report.findError("100", "0x2") );
+	}
+
+	@Test
+	public void processTree()
+	{
+		ValgrindReport report = new ValgrindReport();
+		ValgrindProcess root = createProcess("100", "1");
+		ValgrindProcess child1 = createProcess("101", "100");
+		ValgrindProcess child2 = createProcess("102", "100");
+		ValgrindProcess grandchild = createProcess("103", "101");
+
+		report.addProcess(grandchild);
+		report.addProcess(root);
+		report.addProcess(child1);
+		report.addProcess(child2);
+		report.setupProcessTree();
+
+		assertEquals( 4, report.getProcesses().size() );
+
+		assertNull( root.getParent() );
+		assertEquals( 2, root.getChilds().size() );
+		assertSame( root, child1.getParent() );
+		assertSame( child1, grandchild.getParent() );
+		assertNull( grandchild.getChilds() );
+
+		// a process added later is linked once the report is set up again
+		ValgrindProcess child3 = createProcess("104", "100");
+		report.addProcess(child3);
+		report.setupProcessTree();
+		assertSame( root, report.findProcess("104").getParent() );
+		assertEquals( 3, root.getChilds().size() );
+	}
+
+	@Test
+	public void processTreeAfterDeserialization() throws IOException, ClassNotFoundException
+	{
+		ValgrindReport report = new ValgrindReport();
+		report.addProcess(createProcess("100", "1"));
+		report.addProcess(createProcess("101", "100"));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(report);
+		out.close();
+
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		ValgrindReport copy = (ValgrindReport) in.readObject();
+		in.close();
+
+		assertSame( copy.findProcess("100"), copy.findProcess("101").getParent() );
+		assertEquals( 1, copy.findProcess("100").getChilds().size() );
+	}
+}
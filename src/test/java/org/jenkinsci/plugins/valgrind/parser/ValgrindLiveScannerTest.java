@@ -0,0 +1,128 @@
+package org.jenkinsci.plugins.valgrind.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.jenkinsci.plugins.valgrind.model.ValgrindCounters;
+import org.jenkinsci.plugins.valgrind.model.ValgrindErrorKind;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ValgrindLiveScannerTest
+{
+	private static final String RESOURCES = "src/test/resources/org/jenkinsci/plugins/valgrind/parser/";
+
+	private File dir;
+
+	@Before
+	public void setup() throws IOException
+	{
+		dir = File.createTempFile("valgrind", "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	@After
+	public void cleanup()
+	{
+		for ( File f : dir.listFiles() )
+			f.delete();
+
+		dir.delete();
+	}
+
+	private static String read(String resource) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		InputStream is = new FileInputStream(RESOURCES + resource);
+		try
+		{
+			byte[] buffer = new byte[4096];
+			for ( int n; (n = is.read(buffer)) > 0; )
+				bytes.write(buffer, 0, n);
+		}
+		finally
+		{
+			is.close();
+		}
+
+		return bytes.toString("UTF-8");
+	}
+
+	private void append(String name, String xml) throws IOException
+	{
+		OutputStream os = new FileOutputStream(new File(dir, name), true);
+		try
+		{
+			os.write(xml.getBytes("UTF-8"));
+		}
+		finally
+		{
+			os.close();
+		}
+	}
+
+	private ValgrindLiveScanner.State scan(ValgrindLiveScanner.State state) throws IOException, InterruptedException
+	{
+		return new ValgrindLiveScanner("*.xml", ValgrindParserEngine.DEFAULT, state).invoke(dir, null);
+	}
+
+	@Test
+	public void countsAppendedErrors() throws Exception
+	{
+		String xml = read("simple.xml");
+		int split = xml.indexOf("</error>") + 10;
+
+		append("old.xml", xml);
+
+		ValgrindLiveScanner.State state = scan(null);
+		assertEquals( 0, state.getCounters().getErrorCount() );
+
+		// the second error is incomplete
+		append("running.xml", xml.substring(0, split));
+		state = scan(state);
+		assertEquals( 1, state.getCounters().getErrorCount() );
+
+		state = scan(state);
+		assertEquals( 1, state.getCounters().getErrorCount() );
+
+		append("running.xml", xml.substring(split));
+		state = scan(state);
+
+		ValgrindCounters expected = ValgrindCounters.createInstance(
+				new ValgrindStaxParser(new ValgrindParserOptions(true)).parse(new File(RESOURCES + "simple.xml")));
+
+		ValgrindCounters counters = state.getCounters();
+		assertEquals( expected.getErrorCount(), counters.getErrorCount() );
+		for ( ValgrindErrorKind kind : ValgrindErrorKind.values() )
+		{
+			assertEquals( expected.getErrorCount(kind), counters.getErrorCount(kind) );
+			assertEquals( expected.getLeakedBytes(kind), counters.getLeakedBytes(kind) );
+		}
+	}
+
+	@Test
+	public void replacedFile() throws IOException, InterruptedException
+	{
+		String xml = read("simple.xml");
+
+		ValgrindLiveScanner.State state = scan(null);
+		append("running.xml", xml);
+		state = scan(state);
+		int errors = state.getCounters().getErrorCount();
+
+		new File(dir, "running.xml").delete();
+		append("running.xml", xml.substring(0, xml.indexOf("</error>") + 10));
+		state = scan(state);
+
+		assertEquals( errors + 1, state.getCounters().getErrorCount() );
+	}
+}
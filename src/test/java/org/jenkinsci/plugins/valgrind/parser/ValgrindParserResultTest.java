@@ -0,0 +1,97 @@
+package org.jenkinsci.plugins.valgrind.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.jenkinsci.plugins.valgrind.model.ValgrindProcess;
+import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ValgrindParserResultTest
+{
+	private static final String RESOURCES = "src/test/resources/org/jenkinsci/plugins/valgrind/parser/";
+
+	private File dir;
+
+	@Before
+	public void setup() throws IOException
+	{
+		dir = File.createTempFile("valgrind", "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	@After
+	public void cleanup()
+	{
+		for ( File f : dir.listFiles() )
+			f.delete();
+
+		dir.delete();
+	}
+
+	private void copy(String resource, String name) throws IOException
+	{
+		InputStream is = new FileInputStream(RESOURCES + resource);
+		OutputStream os = new FileOutputStream(new File(dir, name));
+		try
+		{
+			byte[] buffer = new byte[4096];
+			for ( int n; (n = is.read(buffer)) > 0; )
+				os.write(buffer, 0, n);
+		}
+		finally
+		{
+			is.close();
+			os.close();
+		}
+	}
+
+	@Test
+	public void mergesInFileOrder() throws IOException, InterruptedException
+	{
+		for ( int i = 0; i < 20; ++i )
+			copy(i % 2 == 0 ? "simple.xml" : "aux-data.xml", String.format("vg.%02d.xml", i));
+
+		OutputStream os = new FileOutputStream(new File(dir, "vg.99.xml"));
+		os.write("no xml".getBytes("UTF-8"));
+		os.close();
+
+		for ( ValgrindParserEngine engine : ValgrindParserEngine.values() )
+		{
+			ValgrindReport report = new ValgrindParserResult("*.xml", engine).invoke(dir, null);
+
+			List<ValgrindProcess> processes = report.getProcesses();
+			assertEquals( 20, processes.size() );
+			for ( int i = 0; i < 20; ++i )
+				assertEquals( i % 2 == 0 ? "10421" : "10418", processes.get(i).getPid() );
+
+			assertEquals( 1, report.getParserErrors().size() );
+			assertTrue( report.getParserErrors().containsKey("vg.99.xml") );
+		}
+	}
+
+	@Test
+	public void agentParser() throws IOException, InterruptedException
+	{
+		copy("aux-data.xml", "vg.xml");
+
+		ValgrindAgentParser.Result result = new ValgrindAgentParser(new ValgrindParserResult("*.xml")).invoke(dir, null);
+		ValgrindReport report = result.getReport();
+
+		assertEquals( 1, report.getProcesses().size() );
+		assertEquals( 3, report.getErrorList().getErrorCount() );
+		assertEquals( 3, result.getCounters().getErrorCount() );
+		assertEquals( 1, result.getCounters().getProcessCount() );
+	}
+}
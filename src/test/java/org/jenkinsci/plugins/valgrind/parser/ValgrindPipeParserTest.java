@@ -0,0 +1,212 @@
+package org.jenkinsci.plugins.valgrind.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.plugins.valgrind.model.ValgrindCounters;
+import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ValgrindPipeParserTest
+{
+	private static final String RESOURCES = "src/test/resources/org/jenkinsci/plugins/valgrind/parser/";
+
+	private File dir;
+
+	@Before
+	public void setup() throws IOException
+	{
+		dir = File.createTempFile("valgrind", "");
+		dir.delete();
+		new File(dir, "pipe").mkdirs();
+	}
+
+	@After
+	public void cleanup()
+	{
+		for ( File f : new File(dir, "pipe").listFiles() )
+			f.delete();
+
+		for ( File f : dir.listFiles() )
+			f.delete();
+
+		dir.delete();
+	}
+
+	private File copy(String resource, File file) throws IOException
+	{
+		InputStream is = new FileInputStream(RESOURCES + resource);
+		OutputStream os = new FileOutputStream(file);
+		try
+		{
+			byte[] buffer = new byte[4096];
+			for ( int n; (n = is.read(buffer)) > 0; )
+				os.write(buffer, 0, n);
+		}
+		finally
+		{
+			os.close();
+			is.close();
+		}
+
+		return file;
+	}
+
+	@Test
+	public void returnsReport() throws Exception
+	{
+		// a regular file reads just like a pipe whose writer has finished
+		File pipe = copy("simple.xml", new File(dir, "pipe/program"));
+
+		ValgrindReport report = new ValgrindPipeParser(ValgrindParserEngine.DEFAULT, null).invoke(pipe, null);
+
+		ValgrindReport expected = new ValgrindStaxParser().parse(new File(RESOURCES + "simple.xml"));
+		assertEquals( expected.getProcesses().get(0).getPid(), report.getProcesses().get(0).getPid() );
+		assertEquals( ValgrindCounters.createInstance(expected).getErrorCount(), ValgrindCounters.createInstance(report).getErrorCount() );
+
+		// nothing is written next to the pipe
+		assertEquals( 1, dir.listFiles().length );
+	}
+
+	@Test
+	public void emptyPipe() throws IOException, InterruptedException
+	{
+		File pipe = new File(dir, "pipe/program");
+		new FileOutputStream(pipe).close();
+
+		assertNull( new ValgrindPipeParser(ValgrindParserEngine.DEFAULT, null).invoke(pipe, null) );
+	}
+
+	@Test
+	public void appliesParserOptions() throws Exception
+	{
+		File pipe = copy("aux-data.xml", new File(dir, "pipe/program"));
+
+		ValgrindReport report = new ValgrindPipeParser(ValgrindParserEngine.DEFAULT, new ValgrindParserOptions(true)).invoke(pipe, null);
+
+		ValgrindReport expected = new ValgrindStaxParser().parse(new File(RESOURCES + "aux-data.xml"));
+		assertTrue( report.getAllErrors() == null || report.getAllErrors().isEmpty() );
+		assertEquals( ValgrindCounters.createInstance(expected).getErrorCount(), ValgrindCounters.createInstance(report).getErrorCount() );
+	}
+
+	@Test
+	public void snapshotsAreOnlyReadWhenAskedFor() throws Exception
+	{
+		ValgrindReport expected = new ValgrindStaxParser().parse(new File(RESOURCES + "simple.xml"));
+		ValgrindReportSnapshot.write(new File(dir, "program.1.memcheck"), expected);
+
+		// the xml parser never reads a snapshot, whatever its name
+		ValgrindReport report = new ValgrindParserResult("*.memcheck").invoke(dir, null);
+		assertTrue( report.getParserErrors().containsKey("program.1.memcheck") );
+
+		report = ValgrindParserResult.forSnapshots("*.memcheck").invoke(dir, null);
+		assertEquals( ValgrindCounters.createInstance(expected).getErrorCount(), ValgrindCounters.createInstance(report).getErrorCount() );
+	}
+
+	private File mkfifo() throws IOException, InterruptedException
+	{
+		File pipe = new File(dir, "pipe/program");
+
+		// named pipes are not available on every platform
+		Process mkfifo;
+		try
+		{
+			mkfifo = new ProcessBuilder("mkfifo", pipe.getPath()).start();
+		}
+		catch (IOException e)
+		{
+			mkfifo = null;
+		}
+		assumeTrue( mkfifo != null && mkfifo.waitFor() == 0 );
+
+		return pipe;
+	}
+
+	private static Future<ValgrindReport> parse(ExecutorService executor, final File pipe)
+	{
+		return executor.submit(new Callable<ValgrindReport>()
+		{
+			public ValgrindReport call() throws Exception
+			{
+				return new ValgrindPipeParser(ValgrindParserEngine.DEFAULT, null).invoke(pipe, null);
+			}
+		});
+	}
+
+	@Test
+	public void releasedAfterValgrindWrote() throws Exception
+	{
+		File pipe = mkfifo();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try
+		{
+			Future<ValgrindReport> parser = parse(executor, pipe);
+
+			// valgrind writes the whole report and exits
+			copy("simple.xml", pipe);
+			new ValgrindPipeParser.Release().invoke(pipe, null);
+
+			ValgrindReport report = parser.get(10, TimeUnit.SECONDS);
+			assertEquals( 1, report.getProcesses().size() );
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void releasedBeforeParserStarted() throws Exception
+	{
+		File pipe = mkfifo();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try
+		{
+			// valgrind never opened the pipe
+			new ValgrindPipeParser.Release().invoke(pipe, null);
+
+			assertNull( parse(executor, pipe).get(10, TimeUnit.SECONDS) );
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void removedWithoutRelease() throws Exception
+	{
+		File pipe = mkfifo();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try
+		{
+			Future<ValgrindReport> parser = parse(executor, pipe);
+
+			// e.g. the build was aborted, the pipe is removed without releasing it
+			Thread.sleep(100);
+			pipe.delete();
+
+			assertNull( parser.get(10, TimeUnit.SECONDS) );
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+}
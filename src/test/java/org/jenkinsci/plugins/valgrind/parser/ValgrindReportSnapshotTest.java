@@ -0,0 +1,110 @@
+package org.jenkinsci.plugins.valgrind.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.jenkinsci.plugins.valgrind.model.ValgrindCounters;
+import org.jenkinsci.plugins.valgrind.model.ValgrindError;
+import org.jenkinsci.plugins.valgrind.model.ValgrindErrorKind;
+import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class ValgrindReportSnapshotTest
+{
+	@Test
+	public void roundtrip() throws ParserConfigurationException, SAXException, IOException
+	{
+		ValgrindReport report = new ValgrindSaxParser().parse(new File("src/test/resources/org/jenkinsci/plugins/valgrind/parser/aux-data.xml"));
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		ValgrindReportSnapshot.write(os, report);
+
+		ValgrindReport copy = ValgrindReportSnapshot.read(new ByteArrayInputStream(os.toByteArray()));
+
+		assertNotNull( copy );
+		assertEquals( 1, copy.getProcesses().size() );
+		assertEquals( "./program1", copy.getProcesses().get(0).getExecutable() );
+		assertEquals( 3, copy.getErrorList().getErrorCount() );
+		assertEquals( 2, copy.getErrorList().getErrorCountByKind(ValgrindErrorKind.UninitCondition) );
+
+		ValgrindError error = copy.findError("10418", "0x2");
+		assertNotNull( error );
+		assertEquals( report.findError("10418", "0x2").getSuppression(), error.getSuppression() );
+		assertEquals( 4, error.getStacktrace().size() );
+	}
+
+	@Test
+	public void roundtripCounters() throws ParserConfigurationException, SAXException, IOException
+	{
+		ValgrindReport report = new ValgrindSaxParser().parse(new File("src/test/resources/org/jenkinsci/plugins/valgrind/parser/aux-data.xml"));
+		report.addParserError("vg.2.xml", "premature end of file");
+		report.getProcesses().get(0).setOmittedErrors(new ValgrindCounters.Builder().addError(ValgrindErrorKind.Leak_DefinitelyLost, 16, 1).build());
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		ValgrindReportSnapshot.write(os, report);
+
+		ValgrindReport copy = ValgrindReportSnapshot.read(new ByteArrayInputStream(os.toByteArray()));
+
+		assertEquals( 16, copy.getOmittedErrors().getLeakedBytes(ValgrindErrorKind.Leak_DefinitelyLost) );
+		assertEquals( "premature end of file", copy.getParserErrors().get("vg.2.xml") );
+	}
+
+	@Test(expected = IOException.class)
+	public void invalid() throws IOException
+	{
+		ValgrindReportSnapshot.read(new ByteArrayInputStream("<valgrindoutput/>".getBytes("UTF-8")));
+	}
+
+	@Test(expected = InvalidClassException.class)
+	public void rejectsOtherClasses() throws IOException
+	{
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(os);
+		ObjectOutputStream out = new ObjectOutputStream(gzip);
+		out.writeInt(0x56475250);
+		out.writeInt(1);
+		out.writeObject(new Date());
+		out.flush();
+		gzip.finish();
+
+		ValgrindReportSnapshot.read(new ByteArrayInputStream(os.toByteArray()));
+	}
+
+	@Test(expected = InvalidClassException.class)
+	public void rejectsDeepNesting() throws IOException
+	{
+		// only allowed classes, but nested far deeper than any report
+		List<Object> nested = new ArrayList<Object>();
+		for ( int i = 0; i < 100; ++i )
+		{
+			List<Object> outer = new ArrayList<Object>();
+			outer.add(nested);
+			nested = outer;
+		}
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(os);
+		ObjectOutputStream out = new ObjectOutputStream(gzip);
+		out.writeInt(0x56475250);
+		out.writeInt(1);
+		out.writeObject(nested);
+		out.flush();
+		gzip.finish();
+
+		ValgrindReportSnapshot.read(new ByteArrayInputStream(os.toByteArray()));
+	}
+}
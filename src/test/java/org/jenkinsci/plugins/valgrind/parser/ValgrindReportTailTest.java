@@ -0,0 +1,130 @@
+package org.jenkinsci.plugins.valgrind.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ValgrindReportTailTest
+{
+	private static final String RESOURCES = "src/test/resources/org/jenkinsci/plugins/valgrind/parser/";
+
+	private File dir;
+
+	@Before
+	public void setup() throws IOException
+	{
+		dir = File.createTempFile("valgrind", "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	@After
+	public void cleanup()
+	{
+		for ( File f : dir.listFiles() )
+			f.delete();
+
+		dir.delete();
+	}
+
+	private static String read(String resource) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		InputStream is = new FileInputStream(RESOURCES + resource);
+		try
+		{
+			byte[] buffer = new byte[4096];
+			for ( int n; (n = is.read(buffer)) > 0; )
+				bytes.write(buffer, 0, n);
+		}
+		finally
+		{
+			is.close();
+		}
+
+		return bytes.toString("UTF-8");
+	}
+
+	private File write(String name, String xml) throws IOException
+	{
+		File file = new File(dir, name);
+		OutputStream os = new FileOutputStream(file);
+		try
+		{
+			os.write(xml.getBytes("UTF-8"));
+		}
+		finally
+		{
+			os.close();
+		}
+
+		return file;
+	}
+
+	@Test
+	public void counts() throws IOException
+	{
+		ValgrindReportTail tail = ValgrindReportTail.read(new File(RESOURCES + "simple.xml"));
+
+		assertNotNull( tail );
+		assertEquals( 4, tail.getErrorCount() );
+		assertEquals( 6, tail.getOccurrenceCount() );
+		assertEquals( 2, tail.getSuppressedCount() );
+	}
+
+	@Test
+	public void incomplete() throws IOException
+	{
+		String xml = read("aux-data.xml");
+
+		assertNull( ValgrindReportTail.read(write("no-end.xml", xml.substring(0, xml.indexOf("</valgrindoutput>")))) );
+		assertNull( ValgrindReportTail.read(write("no-counts.xml", xml.substring(0, xml.indexOf("<errorcounts>")) + "</valgrindoutput>")) );
+		assertNull( ValgrindReportTail.read(write("empty.xml", "")) );
+	}
+
+	@Test
+	public void largeTail() throws IOException
+	{
+		StringBuilder xml = new StringBuilder("<valgrindoutput>\n<errorcounts>\n");
+		for ( int i = 0; i < 5000; ++i )
+			xml.append("  <pair>\n    <count>3</count>\n    <unique>0x" + Integer.toHexString(i) + "</unique>\n  </pair>\n");
+		xml.append("</errorcounts>\n</valgrindoutput>\n");
+
+		ValgrindReportTail tail = ValgrindReportTail.read(write("large.xml", xml.toString()));
+
+		assertNotNull( tail );
+		assertEquals( 5000, tail.getErrorCount() );
+		assertEquals( 15000, tail.getOccurrenceCount() );
+		assertEquals( 0, tail.getSuppressedCount() );
+	}
+
+	@Test
+	public void scannerSkipsIncompleteFiles() throws IOException, InterruptedException
+	{
+		write("simple.xml", read("simple.xml"));
+
+		// the first error of aux-data.xml only
+		String xml = read("aux-data.xml");
+		write("incomplete.xml", xml.substring(0, xml.indexOf("</error>") + "</error>".length()));
+
+		ValgrindTailScanner.Result result = new ValgrindTailScanner("*.xml").invoke(dir, null);
+
+		assertEquals( 2, result.getFileCount() );
+		assertEquals( 1, result.getIncompleteFileCount() );
+		assertEquals( 4, result.getErrorCount() );
+		assertEquals( 6, result.getOccurrenceCount() );
+		assertEquals( 2, result.getSuppressedCount() );
+	}
+}
@@ -0,0 +1,134 @@
+package org.jenkinsci.plugins.valgrind.parser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.Scanner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Measures the throughput of the parser on a large memcheck report, built by
+ * repeating the errors of aux-data.xml. Not run with the tests, start it with
+ * the test classpath:
+ *
+ * <pre>
+ * java ValgrindSaxParserBenchmark [copies] [rounds]
+ * </pre>
+ *
+ * Each round parses the report with a handler that does nothing, which is as
+ * fast as any handler can get, and with the parser. Another parser to compare
+ * with, e.g. an earlier version checked out under a different name, is given
+ * by the class name in the system property valgrind.benchmark.reference. It
+ * needs a public constructor without arguments and a method parse(File).
+ */
+public class ValgrindSaxParserBenchmark
+{
+	private static final String FIXTURE = "src/test/resources/org/jenkinsci/plugins/valgrind/parser/aux-data.xml";
+
+	private static final Pattern UNIQUE = Pattern.compile( "<unique>0x[0-9a-fA-F]+</unique>" );
+
+	public static void main( String[] args ) throws Exception
+	{
+		int copies = args.length > 0 ? Integer.parseInt( args[0] ) : 30000;
+		int rounds = args.length > 1 ? Integer.parseInt( args[1] ) : 6;
+
+		String referenceName = System.getProperty( "valgrind.benchmark.reference" );
+		Object reference = referenceName == null ? null : Class.forName( referenceName ).newInstance();
+		Method referenceParse = reference == null ? null : reference.getClass().getMethod( "parse", File.class );
+
+		File file = File.createTempFile( "valgrind-benchmark", ".xml" );
+		try
+		{
+			createReport( file, copies );
+			System.out.println( file.length() / ( 1024 * 1024 ) + " MB, " + copies + " copies of the errors of " + FIXTURE );
+
+			for ( int round = 0; round < rounds; ++round )
+			{
+				long start = System.nanoTime();
+				SAXParserFactory factory = SAXParserFactory.newInstance();
+				factory.setNamespaceAware( false );
+				factory.newSAXParser().parse( file, new DefaultHandler() );
+				long empty = System.nanoTime() - start;
+
+				start = System.nanoTime();
+				new ValgrindSaxParser().parse( file );
+				long parser = System.nanoTime() - start;
+
+				String line = String.format( "empty handler %d ms, parser %d ms", empty / 1000000, parser / 1000000 );
+
+				if ( reference != null )
+				{
+					start = System.nanoTime();
+					referenceParse.invoke( reference, file );
+					long referenceTime = System.nanoTime() - start;
+
+					line += String.format( ", reference %d ms, %.2fx", referenceTime / 1000000, (double) referenceTime / parser );
+				}
+
+				System.out.println( line );
+			}
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	/**
+	 * Writes the fixture with its errors repeated, each copy with unique ids
+	 * of its own.
+	 */
+	private static void createReport( File file, int copies ) throws IOException
+	{
+		Scanner scanner = new Scanner( new File( FIXTURE ), "UTF-8" );
+		String fixture;
+		try
+		{
+			fixture = scanner.useDelimiter( "\\A" ).next();
+		}
+		finally
+		{
+			scanner.close();
+		}
+
+		int begin = fixture.indexOf( "<error>" );
+		int end = fixture.lastIndexOf( "</error>" ) + "</error>".length();
+		String errors = fixture.substring( begin, end );
+
+		OutputStream os = new FileOutputStream( file );
+		try
+		{
+			Writer writer = new OutputStreamWriter( os, "UTF-8" );
+			writer.write( fixture, 0, begin );
+
+			long unique = 0;
+			for ( int i = 0; i < copies; ++i )
+			{
+				Matcher matcher = UNIQUE.matcher( errors );
+				StringBuffer copy = new StringBuffer();
+				while ( matcher.find() )
+					matcher.appendReplacement( copy, "<unique>0x" + Long.toHexString( unique++ ) + "</unique>" );
+				matcher.appendTail( copy );
+
+				writer.write( copy.toString() );
+				writer.write( '\n' );
+			}
+
+			writer.write( fixture.substring( end ) );
+			writer.flush();
+		}
+		finally
+		{
+			os.close();
+		}
+	}
+}
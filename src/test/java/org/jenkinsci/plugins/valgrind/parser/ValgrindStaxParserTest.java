@@ -0,0 +1,231 @@
+package org.jenkinsci.plugins.valgrind.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.jenkinsci.plugins.valgrind.model.ValgrindCounters;
+import org.jenkinsci.plugins.valgrind.model.ValgrindError;
+import org.jenkinsci.plugins.valgrind.model.ValgrindErrorKind;
+import org.jenkinsci.plugins.valgrind.model.ValgrindProcess;
+import org.jenkinsci.plugins.valgrind.model.ValgrindStacktraceFrame;
+import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+public class ValgrindStaxParserTest
+{
+	private static final String RESOURCES = "src/test/resources/org/jenkinsci/plugins/valgrind/parser/";
+
+	private static byte[] serialize(ValgrindReport report) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(report);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static void assertSameAsSax(File file) throws ParserConfigurationException, SAXException, IOException
+	{
+		ValgrindReport expected = ValgrindParserEngine.SAX.createParser().parse(file);
+		ValgrindReport actual = ValgrindParserEngine.STAX.createParser().parse(file);
+
+		assertNotNull( actual );
+		assertArrayEquals( serialize(expected), serialize(actual) );
+	}
+
+	@Test
+	public void sameAsSax() throws ParserConfigurationException, SAXException, IOException
+	{
+		assertSameAsSax(new File(RESOURCES + "simple.xml"));
+		assertSameAsSax(new File(RESOURCES + "aux-data.xml"));
+		assertSameAsSax(new File(RESOURCES + "aux-noStacktrace.xml"));
+	}
+
+	private static void assertCountersOnly(ValgrindParserEngine engine, File file) throws ParserConfigurationException, SAXException, IOException
+	{
+		ValgrindReport full = engine.createParser().parse(file);
+		ValgrindReport countersOnly = engine.createParser(new ValgrindParserOptions(true)).parse(file);
+
+		for ( ValgrindProcess process : countersOnly.getProcesses() )
+			assertNull( process.getErrors() );
+
+		ValgrindCounters expected = ValgrindCounters.createInstance(full);
+		ValgrindCounters actual = ValgrindCounters.createInstance(countersOnly);
+
+		assertEquals( expected.getErrorCount(), actual.getErrorCount() );
+		assertEquals( expected.getProcessCount(), actual.getProcessCount() );
+		assertEquals( full.getErrorList().getErrorCount(), countersOnly.getErrorList().getErrorCount() );
+		assertEquals( countersOnly.getErrorList().getErrorCount(), countersOnly.getErrorList().getOmittedErrorCount() );
+
+		for ( ValgrindErrorKind kind : ValgrindErrorKind.values() )
+		{
+			assertEquals( expected.getErrorCount(kind), actual.getErrorCount(kind) );
+			assertEquals( expected.getLeakedBytes(kind), actual.getLeakedBytes(kind) );
+			assertEquals( expected.getLeakedBlocks(kind), actual.getLeakedBlocks(kind) );
+			assertEquals( full.getErrorList().getErrorCountByKind(kind), countersOnly.getErrorList().getErrorCountByKind(kind) );
+		}
+	}
+
+	@Test
+	public void countersOnly() throws ParserConfigurationException, SAXException, IOException
+	{
+		for ( ValgrindParserEngine engine : ValgrindParserEngine.values() )
+		{
+			assertCountersOnly(engine, new File(RESOURCES + "simple.xml"));
+			assertCountersOnly(engine, new File(RESOURCES + "aux-data.xml"));
+			assertCountersOnly(engine, new File(RESOURCES + "aux-noStacktrace.xml"));
+		}
+	}
+
+	@Test
+	public void limits() throws ParserConfigurationException, SAXException, IOException
+	{
+		File file = new File(RESOURCES + "aux-data.xml");
+		ValgrindParserOptions options = new ValgrindParserOptions(false, 1, 2, 0);
+
+		ValgrindReport full = ValgrindParserEngine.SAX.createParser().parse(file);
+		ValgrindReport sax = ValgrindParserEngine.SAX.createParser(options).parse(file);
+		ValgrindReport stax = ValgrindParserEngine.STAX.createParser(options).parse(file);
+
+		assertArrayEquals( serialize(sax), serialize(stax) );
+
+		// one of the two UninitCondition errors is only counted
+		assertEquals( 2, stax.getAllErrors().size() );
+		assertEquals( 1, stax.getErrorList().getOmittedErrorCount() );
+		assertEquals( full.getErrorList().getErrorCount(), stax.getErrorList().getErrorCount() );
+		assertEquals( 2, stax.getErrorList().getErrorCountByKind(ValgrindErrorKind.UninitCondition) );
+		assertEquals( full.getErrorList().getDefinitelyLeakedBytes(), stax.getErrorList().getDefinitelyLeakedBytes() );
+
+		for ( ValgrindError error : stax.getAllErrors() )
+		{
+			assertTrue( error.getStacktrace().size() <= 2 );
+
+			if ( error.getAuxiliaryData() != null )
+				assertTrue( error.getAuxiliaryData().get(0).getStacktrace().size() <= 2 );
+		}
+	}
+
+	@Test
+	public void auxiliaryLimit() throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		InputStream is = new FileInputStream(RESOURCES + "aux-data.xml");
+		try
+		{
+			byte[] buffer = new byte[4096];
+			for ( int n; (n = is.read(buffer)) > 0; )
+				bytes.write(buffer, 0, n);
+		}
+		finally
+		{
+			is.close();
+		}
+
+		// repeat the auxiliary description and stack of the first error
+		String xml = bytes.toString("UTF-8");
+		int start = xml.indexOf("<auxwhat>");
+		int end = xml.indexOf("</stack>", start) + "</stack>".length();
+		xml = xml.substring(0, end) + xml.substring(start, end) + xml.substring(end);
+
+		ValgrindReport all = new ValgrindStaxParser().parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+		ValgrindReport limited = new ValgrindStaxParser(new ValgrindParserOptions(false, 0, 0, 1))
+				.parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+
+		ValgrindError error = all.getAllErrors().get(0);
+		assertEquals( 2, error.getAuxiliaryData().size() );
+
+		error = limited.getAllErrors().get(0);
+		assertEquals( 1, error.getAuxiliaryData().size() );
+		assertEquals( all.getAllErrors().get(0).getStacktrace().size(), error.getStacktrace().size() );
+		assertEquals( all.getAllErrors().get(0).getAuxiliaryData().get(0).getStacktrace().size(),
+				error.getAuxiliaryData().get(0).getStacktrace().size() );
+	}
+
+	@Test
+	public void hiddenFrames() throws ParserConfigurationException, SAXException, IOException
+	{
+		File file = new File(RESOURCES + "simple.xml");
+		ValgrindParserOptions options = new ValgrindParserOptions(false, 0, 0, 0,
+				Arrays.asList("/usr/lib/x86_64-linux-gnu/*", "vgpreload_*"));
+
+		ValgrindReport sax = ValgrindParserEngine.SAX.createParser(options).parse(file);
+		ValgrindReport stax = ValgrindParserEngine.STAX.createParser(options).parse(file);
+
+		assertArrayEquals( serialize(sax), serialize(stax) );
+
+		// three libstdc++ frames followed by one frame of the program
+		List<ValgrindStacktraceFrame> frames = stax.getAllErrors().get(0).getStacktrace().getFrames();
+		assertEquals( 2, frames.size() );
+		assertTrue( frames.get(0).isHidden() );
+		assertEquals( 3, frames.get(0).getHiddenFrameCount() );
+		assertEquals( "/home/jenkins/test-slave/workspace/valgrind-test/program1", frames.get(1).getObjectName() );
+
+		// the valgrind preload library matches by name
+		frames = stax.getAllErrors().get(2).getStacktrace().getFrames();
+		assertTrue( frames.get(0).isHidden() );
+		assertEquals( 1, frames.get(0).getHiddenFrameCount() );
+	}
+
+	@Test
+	public void incomplete() throws ParserConfigurationException, SAXException, IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		InputStream is = new FileInputStream(RESOURCES + "aux-data.xml");
+		try
+		{
+			byte[] buffer = new byte[4096];
+			for ( int n; (n = is.read(buffer)) > 0; )
+				bytes.write(buffer, 0, n);
+		}
+		finally
+		{
+			is.close();
+		}
+
+		// cut the file after the closing tag of the second error
+		String xml = bytes.toString("UTF-8");
+		int end = xml.indexOf("</error>", xml.indexOf("</error>") + 1) + "</error>".length();
+
+		File file = File.createTempFile("incomplete", ".xml");
+		try
+		{
+			OutputStream os = new FileOutputStream(file);
+			try
+			{
+				os.write(xml.substring(0, end).getBytes("UTF-8"));
+			}
+			finally
+			{
+				os.close();
+			}
+
+			assertSameAsSax(file);
+
+			ValgrindReport report = new ValgrindStaxParser().parse(new ByteArrayInputStream(xml.substring(0, end).getBytes("UTF-8")));
+			assertEquals( 2, report.getErrorList().getErrorCount() );
+			assertEquals( 2, report.getErrorList().getErrorCountByKind(ValgrindErrorKind.UninitCondition) );
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+}
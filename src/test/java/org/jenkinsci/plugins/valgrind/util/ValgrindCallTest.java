@@ -0,0 +1,126 @@
+package org.jenkinsci.plugins.valgrind.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.TaskListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.jenkinsci.plugins.valgrind.call.ValgrindCall;
+import org.jenkinsci.plugins.valgrind.call.ValgrindExecutable;
+import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
+import org.jenkinsci.plugins.valgrind.parser.ValgrindSaxParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ValgrindCallTest
+{
+	private static final String VERSION = "if [ \"$1\" = --version ]; then echo valgrind-3.10.0; exit 0; fi\n";
+
+	private static final String ERROR = "<error><unique>0x%d</unique><tid>1</tid><kind>InvalidRead</kind><what>Invalid read of size 4</what></error>";
+
+	private File directory;
+	private TaskListener listener;
+	private Launcher launcher;
+
+	@Before
+	public void setup() throws IOException
+	{
+		directory = File.createTempFile("valgrind", "");
+		directory.delete();
+		directory.mkdir();
+
+		listener = TaskListener.NULL;
+		launcher = new Launcher.LocalLauncher(listener);
+	}
+
+	@After
+	public void cleanup()
+	{
+		for ( File file : directory.listFiles() )
+			file.delete();
+		directory.delete();
+	}
+
+	/**
+	 * @return a valgrind running the given script instead of a program
+	 */
+	private ValgrindCall call(String script) throws IOException, InterruptedException
+	{
+		File valgrind = new File(directory, "valgrind");
+		OutputStream out = new FileOutputStream(valgrind);
+		try
+		{
+			out.write(("#!/bin/sh\n" + VERSION + script).getBytes("UTF-8"));
+		}
+		finally
+		{
+			out.close();
+		}
+		valgrind.setExecutable(true);
+
+		ValgrindCall call = new ValgrindCall();
+		call.setValgrindExecutable(new ValgrindExecutable(launcher, valgrind.getPath()));
+		call.setEnv(new EnvVars());
+		call.setProgramName("program");
+		call.setWorkingDirectory(new FilePath(directory));
+		return call;
+	}
+
+	private int exec(ValgrindCall call) throws IOException, InterruptedException
+	{
+		return call.exec(listener, launcher, new ByteArrayOutputStream(), new ByteArrayOutputStream());
+	}
+
+	@Test
+	public void timeLimitLeavesCompleteReport() throws Exception
+	{
+		// like valgrind, writes the rest of its output when terminated
+		ValgrindCall call = call("echo '<valgrindoutput><pid>1</pid><ppid>0</ppid><tool>memcheck</tool>" + String.format(ERROR, 1) + "' > report.xml\n"
+				+ "trap 'sleep 1; echo \"" + String.format(ERROR, 2) + "</valgrindoutput>\" >> report.xml; exit 143' TERM\n"
+				+ "while true; do sleep 1; done\n");
+		call.setTimeLimit(1000);
+
+		exec(call);
+		assertTrue( call.isTimeLimitExceeded() );
+
+		ValgrindReport report = new ValgrindSaxParser().parse(new File(directory, "report.xml"));
+		assertEquals( 2, report.getErrorList().getErrorCount() );
+	}
+
+	@Test
+	public void cpuTimeLimit() throws Exception
+	{
+		// valgrind terminates itself with the signal that terminated the program
+		ValgrindCall call = call("kill -XCPU $$\n");
+		call.setCpuTimeLimit(10);
+
+		assertEquals( 128 + 24, exec(call) );
+		assertTrue( call.isTimeLimitExceeded() );
+	}
+
+	@Test
+	public void exitCodeBeforeTimeLimit() throws Exception
+	{
+		// the same exit codes as timeout(1), but before the limit was reached
+		ValgrindCall call = call("exit 124\n");
+		call.setTimeLimit(60000);
+
+		assertEquals( 124, exec(call) );
+		assertFalse( call.isTimeLimitExceeded() );
+
+		call = call("exit 152\n");
+		assertEquals( 152, exec(call) );
+		assertFalse( call.isTimeLimitExceeded() );
+	}
+}
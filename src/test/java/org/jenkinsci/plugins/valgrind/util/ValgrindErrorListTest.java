@@ -0,0 +1,101 @@
+package org.jenkinsci.plugins.valgrind.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jenkinsci.plugins.valgrind.model.ValgrindCounters;
+import org.jenkinsci.plugins.valgrind.model.ValgrindError;
+import org.jenkinsci.plugins.valgrind.model.ValgrindErrorKind;
+import org.jenkinsci.plugins.valgrind.model.ValgrindProcess;
+import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
+import org.junit.Test;
+
+public class ValgrindErrorListTest
+{
+	private static ValgrindError createError(ValgrindErrorKind kind, Integer leakedBytes)
+	{
+		ValgrindError error = new ValgrindError();
+		error.setKind(kind);
+		error.setLeakedBytes(leakedBytes);
+		return error;
+	}
+
+	@Test
+	public void countsByKind()
+	{
+		List<ValgrindError> errors = new ArrayList<ValgrindError>();
+		errors.add(createError(ValgrindErrorKind.Leak_DefinitelyLost, 16));
+		errors.add(createError(ValgrindErrorKind.Leak_DefinitelyLost, 8));
+		errors.add(createError(ValgrindErrorKind.Leak_PossiblyLost, 4));
+		errors.add(createError(ValgrindErrorKind.Race, null));
+		errors.add(createError(null, null));
+
+		ValgrindErrorList list = new ValgrindErrorList(errors);
+
+		assertEquals( 5, list.getErrorCount() );
+		assertEquals( 2, list.getLeakDefinitelyLostErrorCount() );
+		assertEquals( 1, list.getRaceErrorCount() );
+		assertEquals( 0, list.getInvalidReadErrorCount() );
+		assertEquals( 24, list.getDefinitelyLeakedBytes() );
+		assertEquals( 4, list.getPossiblyLeakedBytes() );
+		assertEquals( 2, list.getLeakDefinitelyLostErrors().size() );
+		assertSame( errors.get(3), list.getRaceErrors().get(0) );
+		assertNull( list.getInvalidReadErrors() );
+	}
+
+	@Test
+	public void processListIsRebuiltAfterChanges()
+	{
+		ValgrindProcess process = new ValgrindProcess();
+		process.addError(createError(ValgrindErrorKind.InvalidRead, null));
+
+		ValgrindErrorList list = process.getErrorList();
+		assertSame( list, process.getErrorList() );
+		assertEquals( 1, list.getInvalidReadErrorCount() );
+
+		process.addError(createError(ValgrindErrorKind.InvalidRead, null));
+		assertEquals( 2, process.getErrorList().getInvalidReadErrorCount() );
+	}
+
+	@Test
+	public void reportListIsRebuiltAfterProcessChanges()
+	{
+		ValgrindProcess process = new ValgrindProcess();
+		ValgrindReport report = new ValgrindReport();
+		report.addProcess(process);
+		process.addError(createError(ValgrindErrorKind.InvalidRead, null));
+
+		ValgrindErrorList list = report.getErrorList();
+		assertSame( list, report.getErrorList() );
+		assertEquals( 1, list.getInvalidReadErrorCount() );
+
+		process.addError(createError(ValgrindErrorKind.InvalidRead, null));
+		report.setupProcessTree();
+		assertEquals( 2, report.getErrorList().getInvalidReadErrorCount() );
+
+		process.setOmittedErrors(new ValgrindCounters.Builder().addError(ValgrindErrorKind.InvalidRead, null, null).build());
+		report.setupProcessTree();
+		assertEquals( 3, report.getErrorList().getInvalidReadErrorCount() );
+
+		ValgrindProcess other = new ValgrindProcess();
+		other.addError(createError(ValgrindErrorKind.InvalidRead, null));
+		ValgrindReport otherReport = new ValgrindReport();
+		otherReport.addProcess(other);
+		report.integrate(otherReport);
+		assertEquals( 4, report.getErrorList().getInvalidReadErrorCount() );
+	}
+
+	@Test
+	public void leakSumsDontOverflow()
+	{
+		List<ValgrindError> errors = new ArrayList<ValgrindError>();
+		errors.add(createError(ValgrindErrorKind.Leak_DefinitelyLost, Integer.MAX_VALUE));
+		errors.add(createError(ValgrindErrorKind.Leak_DefinitelyLost, Integer.MAX_VALUE));
+
+		assertEquals( 2L * Integer.MAX_VALUE, new ValgrindErrorList(errors).getDefinitelyLeakedBytes() );
+	}
+}
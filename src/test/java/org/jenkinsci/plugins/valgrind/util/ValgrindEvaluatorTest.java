@@ -0,0 +1,62 @@
+package org.jenkinsci.plugins.valgrind.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import hudson.EnvVars;
+import hudson.util.StreamTaskListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.jenkinsci.plugins.valgrind.config.ValgrindPublisherConfig;
+import org.jenkinsci.plugins.valgrind.model.ValgrindCounters;
+import org.jenkinsci.plugins.valgrind.model.ValgrindErrorKind;
+import org.junit.Test;
+
+public class ValgrindEvaluatorTest
+{
+	private static ValgrindEvaluator evaluator(String invalidReadWrite, String definitelyLost, String total)
+	{
+		ValgrindPublisherConfig config = new ValgrindPublisherConfig("*.memcheck", invalidReadWrite, definitelyLost, total,
+				"0", "0", "0", "", false, false, false, false, false, false, false, "", "", "", "");
+
+		return new ValgrindEvaluator(config, null);
+	}
+
+	@Test
+	public void exceedsFailThreshold()
+	{
+		ValgrindCounters counters = new ValgrindCounters.Builder()
+				.addError(ValgrindErrorKind.InvalidRead, null, null)
+				.addError(ValgrindErrorKind.InvalidWrite, null, null)
+				.addError(ValgrindErrorKind.Leak_DefinitelyLost, 16, 1)
+				.build();
+
+		EnvVars env = new EnvVars();
+
+		assertFalse( evaluator("", "", "").getFailThresholds(env).isExceeded(counters) );
+		assertFalse( evaluator("2", "1", "3").getFailThresholds(env).isExceeded(counters) );
+		assertTrue( evaluator("1", "", "").getFailThresholds(env).isExceeded(counters) );
+		assertTrue( evaluator("", "0", "").getFailThresholds(env).isExceeded(counters) );
+		assertTrue( evaluator("", "", "2").getFailThresholds(env).isExceeded(counters) );
+	}
+
+	@Test
+	public void invalidThresholdIsLoggedOnce() throws IOException
+	{
+		ValgrindPublisherConfig config = new ValgrindPublisherConfig("*.memcheck", "x", "", "",
+				"0", "0", "0", "", false, false, false, false, false, false, false, "", "", "", "");
+
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		ValgrindEvaluator.FailThresholds thresholds = new ValgrindEvaluator(config, new StreamTaskListener(log, Charset.forName("UTF-8")))
+				.getFailThresholds(new EnvVars());
+
+		for ( int i = 0; i < 3; ++i )
+			assertFalse( thresholds.isExceeded(ValgrindCounters.EMPTY) );
+
+		assertEquals( "[Valgrind] ERROR: 'x' is not a valid threshold\n", log.toString("UTF-8").replace("\r", "") );
+	}
+}
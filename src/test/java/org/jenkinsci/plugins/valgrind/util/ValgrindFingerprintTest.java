@@ -0,0 +1,85 @@
+package org.jenkinsci.plugins.valgrind.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assume.assumeNotNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jenkinsci.plugins.valgrind.call.ValgrindFingerprint;
+import org.junit.Test;
+
+public class ValgrindFingerprintTest
+{
+	private static void write(File file, String content) throws IOException
+	{
+		OutputStream out = new FileOutputStream(file);
+		try
+		{
+			out.write(content.getBytes("UTF-8"));
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private static String fingerprint(File executable, List<String> arguments, List<String> files) throws IOException, InterruptedException
+	{
+		return new ValgrindFingerprint(arguments, files, null).invoke(executable, null);
+	}
+
+	@Test
+	public void parseLibraries()
+	{
+		String output = "\tlinux-vdso.so.1 (0x00007ffd8a3f2000)\n"
+				+ "\tlibfoo.so.1 => not found\n"
+				+ "\tlibc.so.6 => /lib/x86_64-linux-gnu/libc.so.6 (0x00007f2dcf241000)\n"
+				+ "\t/lib64/ld-linux-x86-64.so.2 (0x00007f2dcf487000)\n";
+
+		assertEquals( Arrays.asList("/lib/x86_64-linux-gnu/libc.so.6", "/lib64/ld-linux-x86-64.so.2", "libfoo.so.1 => not found"),
+				ValgrindFingerprint.parseLibraries(output) );
+	}
+
+	@Test
+	public void changesWithInputs() throws IOException, InterruptedException
+	{
+		File executable = File.createTempFile("valgrind", "");
+		File suppressions = File.createTempFile("valgrind", ".supp");
+		try
+		{
+			write(executable, "program");
+			write(suppressions, "{}");
+
+			List<String> arguments = Arrays.asList("valgrind", "--tool=memcheck", "program");
+			List<String> files = Collections.singletonList(suppressions.getPath());
+
+			String fingerprint = fingerprint(executable, arguments, files);
+
+			// ldd is not available on every platform
+			assumeNotNull( fingerprint );
+			assertEquals( 64, fingerprint.length() );
+			assertEquals( fingerprint, fingerprint(executable, arguments, files) );
+
+			assertFalse( fingerprint.equals(fingerprint(executable, Arrays.asList("valgrind", "--tool=helgrind", "program"), files)) );
+
+			write(suppressions, "{ changed }");
+			String changedSuppressions = fingerprint(executable, arguments, files);
+			assertFalse( fingerprint.equals(changedSuppressions) );
+
+			write(executable, "rebuilt program");
+			assertFalse( changedSuppressions.equals(fingerprint(executable, arguments, files)) );
+		}
+		finally
+		{
+			executable.delete();
+			suppressions.delete();
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package org.jenkinsci.plugins.valgrind.util;
+
+import static org.junit.Assert.assertEquals;
+
+import hudson.util.StreamTaskListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class ValgrindLogOutputStreamTest
+{
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Test
+	public void forwardsLines() throws IOException
+	{
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		OutputStream os = new ValgrindLogOutputStream(new StreamTaskListener(log, UTF_8), "out", 0);
+
+		os.write("first\nsec".getBytes(UTF_8));
+		assertEquals( "[Valgrind] out: first\n", log.toString("UTF-8").replace("\r", "") );
+
+		os.write("ond\nthird".getBytes(UTF_8));
+		os.close();
+		assertEquals( "[Valgrind] out: first\n[Valgrind] out: second\n[Valgrind] out: third\n", log.toString("UTF-8").replace("\r", "") );
+	}
+
+	@Test
+	public void limit() throws IOException
+	{
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		OutputStream os = new ValgrindLogOutputStream(new StreamTaskListener(log, UTF_8), "out", 10);
+
+		os.write("12345\n".getBytes(UTF_8));
+		os.write("67890\n".getBytes(UTF_8));
+		os.write("dropped\n".getBytes(UTF_8));
+		os.write("dropped\n".getBytes(UTF_8));
+		os.close();
+
+		assertEquals( "[Valgrind] out: 12345\n"
+				+ "[Valgrind] out: 6789\n"
+				+ "[Valgrind] out: output limit of 10 bytes reached, the rest is not logged\n"
+				+ "[Valgrind] out: 18 bytes were not logged\n", log.toString("UTF-8").replace("\r", "") );
+	}
+
+	@Test
+	public void withoutNewlines() throws IOException
+	{
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		OutputStream os = new ValgrindLogOutputStream(new StreamTaskListener(log, UTF_8), "out", 0);
+
+		byte[] chunk = new byte[1000];
+		Arrays.fill(chunk, (byte) 'x');
+		for ( int i = 0; i < 9; ++i )
+			os.write(chunk);
+
+		// long lines are logged as they are written, not held back
+		String[] lines = log.toString("UTF-8").replace("\r", "").split("\n");
+		assertEquals( 1, lines.length );
+		assertEquals( "[Valgrind] out: ".length() + ValgrindLogOutputStream.MAX_LINE_LENGTH, lines[0].length() );
+
+		os.close();
+		lines = log.toString("UTF-8").replace("\r", "").split("\n");
+		assertEquals( 2, lines.length );
+		assertEquals( "[Valgrind] out: ".length() + 9000 - ValgrindLogOutputStream.MAX_LINE_LENGTH, lines[1].length() );
+	}
+
+	@Test
+	public void splitsBetweenCharacters() throws IOException
+	{
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		OutputStream os = new ValgrindLogOutputStream(new StreamTaskListener(log, UTF_8), "out", 0);
+
+		// the 4 bytes of U+1F600 start 2 bytes before the line is full
+		byte[] chunk = new byte[ValgrindLogOutputStream.MAX_LINE_LENGTH - 2];
+		Arrays.fill(chunk, (byte) 'x');
+		os.write(chunk);
+		os.write("\uD83D\uDE00\u00E4\n".getBytes(UTF_8));
+		os.close();
+
+		String[] lines = log.toString("UTF-8").replace("\r", "").split("\n");
+		assertEquals( 2, lines.length );
+		assertEquals( "[Valgrind] out: " + new String(chunk, UTF_8), lines[0] );
+		assertEquals( "[Valgrind] out: \uD83D\uDE00\u00E4", lines[1] );
+	}
+
+	@Test
+	public void characterBoundary()
+	{
+		byte[] bytes = "a\u00E4\u20AC".getBytes(UTF_8);
+		assertEquals( 1, ValgrindLogOutputStream.getCharacterBoundary(bytes, 2) );
+		assertEquals( 3, ValgrindLogOutputStream.getCharacterBoundary(bytes, 3) );
+		assertEquals( 3, ValgrindLogOutputStream.getCharacterBoundary(bytes, 4) );
+		assertEquals( 3, ValgrindLogOutputStream.getCharacterBoundary(bytes, 5) );
+		assertEquals( 6, ValgrindLogOutputStream.getCharacterBoundary(bytes, 6) );
+	}
+
+	@Test
+	public void limitWithoutNewlines() throws IOException
+	{
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		OutputStream os = new ValgrindLogOutputStream(new StreamTaskListener(log, UTF_8), "out", 10);
+
+		os.write("123456789012345".getBytes(UTF_8));
+		assertEquals( "[Valgrind] out: 1234567890\n"
+				+ "[Valgrind] out: output limit of 10 bytes reached, the rest is not logged\n", log.toString("UTF-8").replace("\r", "") );
+
+		os.write("678901234567890".getBytes(UTF_8));
+		os.close();
+		assertEquals( "[Valgrind] out: 1234567890\n"
+				+ "[Valgrind] out: output limit of 10 bytes reached, the rest is not logged\n"
+				+ "[Valgrind] out: 20 bytes were not logged\n", log.toString("UTF-8").replace("\r", "") );
+	}
+}
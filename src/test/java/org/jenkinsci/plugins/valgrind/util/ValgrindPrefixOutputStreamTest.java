@@ -0,0 +1,77 @@
+package org.jenkinsci.plugins.valgrind.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+public class ValgrindPrefixOutputStreamTest
+{
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	@Test
+	public void prefixesLines() throws IOException
+	{
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		OutputStream os = new ValgrindPrefixOutputStream(new PrintStream(log, true, "UTF-8"), "[a] ", UTF_8);
+
+		os.write("first\nsec".getBytes(UTF_8));
+		assertEquals( "[a] first\n", log.toString("UTF-8") );
+
+		os.write("ond\nthird".getBytes(UTF_8));
+		os.close();
+		assertEquals( "[a] first\n[a] second\n[a] third", log.toString("UTF-8") );
+	}
+
+	@Test
+	public void concurrentLinesAreNotMixed() throws IOException, InterruptedException
+	{
+		ByteArrayOutputStream log = new ByteArrayOutputStream();
+		final PrintStream out = new PrintStream(log, true, "UTF-8");
+
+		Thread[] threads = new Thread[4];
+		for ( int i = 0; i < threads.length; ++i )
+		{
+			final String name = "t" + i;
+			threads[i] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						OutputStream os = new ValgrindPrefixOutputStream(out, "[" + name + "] ", UTF_8);
+						for ( int j = 0; j < 100; ++j )
+						{
+							// written in pieces, lines are only written once complete
+							os.write(name.getBytes(UTF_8));
+							os.write(" line\n".getBytes(UTF_8));
+						}
+						os.close();
+					}
+					catch (IOException e)
+					{
+						throw new RuntimeException(e);
+					}
+				}
+			};
+			threads[i].start();
+		}
+
+		for ( Thread t : threads )
+			t.join();
+
+		String[] lines = log.toString("UTF-8").split("\n");
+		assertEquals( 400, lines.length );
+		for ( String line : lines )
+		{
+			String name = line.substring(1, 3);
+			assertEquals( "[" + name + "] " + name + " line", line );
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package org.jenkinsci.plugins.valgrind.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jenkinsci.plugins.valgrind.call.ValgrindProcessThrottle;
+import org.junit.Test;
+
+public class ValgrindProcessThrottleTest
+{
+	@Test
+	public void parseLimits()
+	{
+		Map<String, Integer> limits = ValgrindProcessThrottle.parseLimits("linux && small = 2\n\n  big=8 \nnolimit\nzero=0\nnan=x");
+
+		assertEquals( 2, limits.size() );
+		assertEquals( Integer.valueOf(2), limits.get("linux && small") );
+		assertEquals( Integer.valueOf(8), limits.get("big") );
+		assertTrue( ValgrindProcessThrottle.parseLimits(null).isEmpty() );
+	}
+
+	@Test
+	public void limitsPerNode() throws InterruptedException
+	{
+		Map<String, Integer> limits = Collections.singletonMap("linux", 1);
+
+		ValgrindProcessThrottle.Permit permit = ValgrindProcessThrottle.acquire("limitsPerNode-a", limits, "build");
+		assertFalse( permit.hasWaited() );
+		assertFalse( ValgrindProcessThrottle.isAvailable("limitsPerNode-a", limits) );
+		assertTrue( ValgrindProcessThrottle.isAvailable("limitsPerNode-b", limits) );
+
+		permit.release();
+		assertTrue( ValgrindProcessThrottle.isAvailable("limitsPerNode-a", limits) );
+	}
+
+	@Test
+	public void waitsForPermit() throws InterruptedException
+	{
+		final Map<String, Integer> limits = Collections.singletonMap("linux", 2);
+		final Object build = new Object();
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maxRunning = new AtomicInteger();
+
+		Thread[] threads = new Thread[6];
+		for ( int i = 0; i < threads.length; ++i )
+		{
+			threads[i] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						ValgrindProcessThrottle.Permit permit = ValgrindProcessThrottle.acquire("waitsForPermit", limits, build);
+						try
+						{
+							int count = running.incrementAndGet();
+							synchronized (maxRunning)
+							{
+								maxRunning.set(Math.max(maxRunning.get(), count));
+							}
+							Thread.sleep(20);
+							running.decrementAndGet();
+						}
+						finally
+						{
+							permit.release();
+						}
+					}
+					catch (InterruptedException e)
+					{
+						throw new RuntimeException(e);
+					}
+				}
+			};
+			threads[i].start();
+		}
+
+		for ( Thread t : threads )
+			t.join();
+
+		assertTrue( maxRunning.get() <= 2 );
+		assertTrue( ValgrindProcessThrottle.isAvailable("waitsForPermit", limits) );
+	}
+
+	@Test
+	public void changedLimitIsApplied() throws InterruptedException
+	{
+		ValgrindProcessThrottle.Permit first = ValgrindProcessThrottle.acquire("changedLimit", Collections.singletonMap("linux", 1), "build");
+		assertFalse( ValgrindProcessThrottle.isAvailable("changedLimit", Collections.singletonMap("linux", 1)) );
+
+		Map<String, Integer> raised = Collections.singletonMap("linux", 2);
+		assertTrue( ValgrindProcessThrottle.isAvailable("changedLimit", raised) );
+		ValgrindProcessThrottle.Permit second = ValgrindProcessThrottle.acquire("changedLimit", raised, "build");
+		assertFalse( ValgrindProcessThrottle.isAvailable("changedLimit", raised) );
+
+		// processes started before the limit was lowered still count
+		Map<String, Integer> lowered = Collections.singletonMap("linux", 1);
+		first.release();
+		assertFalse( ValgrindProcessThrottle.isAvailable("changedLimit", lowered) );
+		second.release();
+		assertTrue( ValgrindProcessThrottle.isAvailable("changedLimit", lowered) );
+	}
+
+	private static Thread startWaiting(final Map<String, Integer> limits, final String build, final List<String> order) throws InterruptedException
+	{
+		Thread thread = new Thread()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					ValgrindProcessThrottle.Permit permit = ValgrindProcessThrottle.acquire("buildsTakeTurns", limits, build);
+					assertTrue( permit.hasWaited() );
+					order.add(build);
+					permit.release();
+				}
+				catch (InterruptedException e)
+				{
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		thread.start();
+
+		while ( thread.getState() != Thread.State.WAITING )
+			Thread.sleep(1);
+
+		return thread;
+	}
+
+	@Test
+	public void buildsTakeTurns() throws InterruptedException
+	{
+		Map<String, Integer> limits = Collections.singletonMap("linux", 1);
+		List<String> order = Collections.synchronizedList(new ArrayList<String>());
+
+		ValgrindProcessThrottle.Permit permit = ValgrindProcessThrottle.acquire("buildsTakeTurns", limits, "running");
+
+		// a build running several executables at the same time doesn't hold back other builds
+		List<Thread> threads = new ArrayList<Thread>();
+		for ( int i = 0; i < 3; ++i )
+			threads.add(startWaiting(limits, "a", order));
+		threads.add(startWaiting(limits, "b", order));
+
+		permit.release();
+		for ( Thread t : threads )
+			t.join();
+
+		assertEquals( Arrays.asList("a", "b", "a", "a"), order );
+	}
+}
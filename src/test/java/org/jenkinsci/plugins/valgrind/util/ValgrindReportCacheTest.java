@@ -0,0 +1,121 @@
+package org.jenkinsci.plugins.valgrind.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jenkinsci.plugins.valgrind.model.ValgrindProcess;
+import org.jenkinsci.plugins.valgrind.model.ValgrindReport;
+import org.junit.Test;
+
+public class ValgrindReportCacheTest
+{
+	private static class CountingLoader implements ValgrindReportCache.Loader
+	{
+		final AtomicInteger loads = new AtomicInteger();
+
+		public ValgrindReport load() throws IOException, InterruptedException
+		{
+			loads.incrementAndGet();
+
+			ValgrindProcess process = new ValgrindProcess();
+			process.setExecutable("program");
+			process.setPid("1");
+
+			ValgrindReport report = new ValgrindReport();
+			report.addProcess(process);
+			return report;
+		}
+	}
+
+	@Test
+	public void loadsOnce() throws IOException, InterruptedException
+	{
+		ValgrindReportCache cache = new ValgrindReportCache(1024 * 1024);
+		CountingLoader loader = new CountingLoader();
+
+		ValgrindReport report = cache.get("build", loader);
+		assertSame( report, cache.get("build", loader) );
+		assertEquals( 1, loader.loads.get() );
+
+		cache.invalidate("build");
+		cache.get("build", loader);
+		assertEquals( 2, loader.loads.get() );
+	}
+
+	@Test
+	public void invalidateAllWithPrefix() throws IOException, InterruptedException
+	{
+		ValgrindReportCache cache = new ValgrindReportCache(1024 * 1024);
+		CountingLoader loader = new CountingLoader();
+
+		cache.get("jobs/a/builds/1", loader);
+		cache.get("jobs/a/builds/2", loader);
+		cache.get("jobs/ab/builds/1", loader);
+		assertEquals( 3, loader.loads.get() );
+
+		cache.invalidateAll("jobs/a/");
+		cache.get("jobs/a/builds/1", loader);
+		cache.get("jobs/a/builds/2", loader);
+		cache.get("jobs/ab/builds/1", loader);
+		assertEquals( 5, loader.loads.get() );
+	}
+
+	@Test
+	public void concurrentLoadsAreShared() throws InterruptedException
+	{
+		final ValgrindReportCache cache = new ValgrindReportCache(1024 * 1024);
+		final CountingLoader loader = new CountingLoader()
+		{
+			@Override
+			public ValgrindReport load() throws IOException, InterruptedException
+			{
+				Thread.sleep(100);
+				return super.load();
+			}
+		};
+
+		Thread[] threads = new Thread[8];
+		for ( int i = 0; i < threads.length; ++i )
+		{
+			threads[i] = new Thread()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						cache.get("build", loader);
+					}
+					catch (Exception e)
+					{
+						throw new RuntimeException(e);
+					}
+				}
+			};
+			threads[i].start();
+		}
+
+		for ( Thread t : threads )
+			t.join();
+
+		assertEquals( 1, loader.loads.get() );
+	}
+
+	@Test
+	public void evictsToSoftReferences() throws IOException, InterruptedException
+	{
+		CountingLoader loader = new CountingLoader();
+		long size = ValgrindReportCache.estimateSize(loader.load());
+
+		ValgrindReportCache cache = new ValgrindReportCache(size);
+		ValgrindReport first = cache.get("first", loader);
+		cache.get("second", loader);
+
+		// "first" is only softly referenced now, but still reachable through this test
+		assertSame( first, cache.get("first", loader) );
+		assertEquals( 3, loader.loads.get() );
+	}
+}
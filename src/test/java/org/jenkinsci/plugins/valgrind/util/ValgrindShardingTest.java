@@ -0,0 +1,64 @@
+package org.jenkinsci.plugins.valgrind.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ValgrindShardingTest
+{
+	private static final List<String> NAMES = Arrays.asList("a", "b", "c", "d", "e", "f", "g");
+
+	@Test
+	public void everyExecutableInExactlyOneShard()
+	{
+		Map<String, Long> durations = new HashMap<String, Long>();
+		durations.put("b", 100L);
+		durations.put("e", 5L);
+
+		List<String> all = new ArrayList<String>();
+		for ( int i = 0; i < 3; ++i )
+		{
+			List<String> shard = ValgrindSharding.select(NAMES, durations, i, 3);
+			assertEquals( shard, ValgrindSharding.select(NAMES, durations, i, 3) );
+			all.addAll(shard);
+		}
+
+		Collections.sort(all);
+		assertEquals( NAMES, all );
+	}
+
+	@Test
+	public void balancesDurations()
+	{
+		Map<String, Long> durations = new HashMap<String, Long>();
+		durations.put("a", 2400L);
+		for ( String name : NAMES.subList(1, NAMES.size()) )
+			durations.put(name, 400L);
+
+		// the long running one gets a shard of its own
+		assertEquals( Arrays.asList("a"), ValgrindSharding.select(NAMES, durations, 0, 2) );
+		assertEquals( NAMES.subList(1, NAMES.size()), ValgrindSharding.select(NAMES, durations, 1, 2) );
+	}
+
+	@Test
+	public void withoutDurations()
+	{
+		Map<String, Long> none = Collections.emptyMap();
+
+		for ( int i = 0; i < 3; ++i )
+		{
+			int size = ValgrindSharding.select(NAMES, none, i, 3).size();
+			assertTrue( size == 2 || size == 3 );
+		}
+
+		assertEquals( NAMES, ValgrindSharding.select(NAMES, none, 0, 1) );
+	}
+}
@@ -0,0 +1,94 @@
+package org.jenkinsci.plugins.valgrind.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import hudson.remoting.VirtualChannel;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.jenkinsci.plugins.valgrind.call.ValgrindVersion;
+import org.jenkinsci.plugins.valgrind.call.ValgrindVersionCache;
+import org.junit.Test;
+
+public class ValgrindVersionCacheTest
+{
+	private static class Channel implements VirtualChannel
+	{
+		public <V, T extends Throwable> V call(hudson.remoting.Callable<V, T> callable) throws IOException, T, InterruptedException
+		{
+			return callable.call();
+		}
+	}
+
+	@Test
+	public void keyChangesWithExecutable() throws IOException, InterruptedException
+	{
+		File file = File.createTempFile("valgrind", "");
+		try
+		{
+			ValgrindVersionCache.Locate locate = new ValgrindVersionCache.Locate(null);
+
+			String key = locate.invoke(file, null);
+			assertNotNull( key );
+			assertEquals( key, locate.invoke(file, null) );
+
+			OutputStream os = new FileOutputStream(file);
+			os.write(1);
+			os.close();
+
+			// the size changed
+			assertFalse( key.equals(locate.invoke(file, null)) );
+		}
+		finally
+		{
+			file.delete();
+		}
+
+		assertNull( new ValgrindVersionCache.Locate(null).invoke(file, null) );
+		assertNull( new ValgrindVersionCache.Locate(null).invoke(new File("valgrind-does-not-exist"), null) );
+	}
+
+	@Test
+	public void nameLookedUpInGivenPath() throws IOException, InterruptedException
+	{
+		File file = File.createTempFile("valgrind", "");
+		try
+		{
+			File name = new File(file.getName());
+			String dir = file.getParent();
+
+			assertNotNull( new ValgrindVersionCache.Locate(dir).invoke(name, null) );
+			assertEquals( new ValgrindVersionCache.Locate(null).invoke(file, null), new ValgrindVersionCache.Locate("/does-not-exist" + File.pathSeparator + dir).invoke(name, null) );
+			assertNull( new ValgrindVersionCache.Locate("/does-not-exist").invoke(name, null) );
+			assertNull( new ValgrindVersionCache.Locate(null).invoke(name, null) );
+
+			// depends on the directory valgrind is started in
+			assertNull( new ValgrindVersionCache.Locate(dir).invoke(new File(".", file.getName()), null) );
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	@Test
+	public void perChannel()
+	{
+		VirtualChannel a = new Channel();
+		VirtualChannel b = new Channel();
+		ValgrindVersion version = ValgrindVersion.createInstance(3, 10, 1);
+
+		ValgrindVersionCache.put(a, "/usr/bin/valgrind:1:2", version);
+
+		assertSame( version, ValgrindVersionCache.get(a, "/usr/bin/valgrind:1:2") );
+		assertNull( ValgrindVersionCache.get(a, "/usr/bin/valgrind:1:3") );
+		assertNull( ValgrindVersionCache.get(b, "/usr/bin/valgrind:1:2") );
+	}
+}